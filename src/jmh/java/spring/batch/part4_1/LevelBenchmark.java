@@ -0,0 +1,49 @@
+package spring.batch.part4_1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+
+    //각 등급 구간의 경계 금액
+    @Param({"1000", "200000", "300000", "500000"})
+    private int totalAmount;
+
+    private Level[] levels;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        levels = Level.values();
+    }
+
+    @Benchmark
+    public Level getNextLevel() {
+        return Level.getNextLevel(totalAmount);
+    }
+
+    @Benchmark
+    public boolean availableLevelUp() {
+        Level level = levels[index];
+        index = (index + 1) % levels.length;
+        return Level.availableLevelUp(level, totalAmount);
+    }
+}
@@ -0,0 +1,82 @@
+package spring.batch.part4_1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import spring.batch.part5.Orders;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserLevelUpBenchmark {
+
+    //회원 1명이 가진 주문 건수
+    @Param({"1", "10", "100", "1000"})
+    private int orderCount;
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(orderCount);
+        List<Orders> orders = new ArrayList<>(orderCount);
+
+        for (int i = 0; i < orderCount; i++) {
+            orders.add(Orders.builder()
+                    .amount(random.nextInt(1_000))
+                    .createdDate(LocalDate.of(2020, 11, 1))
+                    .itemName("item " + i)
+                    .build());
+        }
+
+        user = User.builder()
+                .username("benchmark user")
+                .orders(orders)
+                .build();
+    }
+
+    //totalAmount 컬럼 없이 주문 금액을 매번 합산하던 방식
+    @Benchmark
+    public long sumOrderAmount() {
+        return user.getOrders().stream()
+                .mapToLong(Orders::getAmount)
+                .sum();
+    }
+
+    @Benchmark
+    public boolean availableLevelUp() {
+        return user.availableLevelUp();
+    }
+
+    @Benchmark
+    public Level levelUp() {
+        return user.levelUp();
+    }
+
+    //ItemProcessor + ItemWriter 가 한 회원에 대해 수행하는 작업
+    @Benchmark
+    public Level processAndWrite() {
+        if (user.availableLevelUp()) {
+            return user.levelUp();
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,115 @@
+package spring.batch.part5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 일별 주문 통계 csv 를 lines 줄 쓰는 시간을 BeanWrapperFieldExtractor + DelimitedLineAggregator 와 CsvItemWriter 로 비교한다.
+ * ./gradlew jmh -PjmhIncludes=CsvItemWriterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvItemWriterBenchmark {
+
+    @Param({"2000000"})
+    private int lines;
+
+    @Param({"1000"})
+    private int chunkSize;
+
+    private List<OrderStatistics> chunk;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        chunk = new ArrayList<>(chunkSize);
+        LocalDate date = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < chunkSize; i++) {
+            chunk.add(OrderStatistics.builder()
+                    .amount(String.valueOf(1000L * i))
+                    .date(date.plusDays(i % 366))
+                    .build());
+        }
+
+        file = Files.createTempFile("order-statistics", ".csv").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long beanWrapper() throws Exception {
+        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[] {"amount","date"});
+
+        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        return export(new FlatFileItemWriterBuilder<OrderStatistics>()
+                .resource(new FileSystemResource(file))
+                .lineAggregator(lineAggregator)
+                .name("beanWrapper")
+                .encoding("UTF-8")
+                .transactional(false)
+                .build());
+    }
+
+    @Benchmark
+    public long csvItemWriter() throws Exception {
+        CsvItemWriter<OrderStatistics> itemWriter = new CsvItemWriter<OrderStatistics>()
+                .field(OrderStatistics::getAmount)
+                .dateField(OrderStatistics::getDate);
+        itemWriter.setResource(new FileSystemResource(file));
+        itemWriter.setName("csvItemWriter");
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setTransactional(false);
+
+        return export(itemWriter);
+    }
+
+    private long export(FlatFileItemWriter<OrderStatistics> itemWriter) throws Exception {
+        itemWriter.afterPropertiesSet();
+        itemWriter.open(new ExecutionContext());
+        try {
+            for (int written = 0; written < lines; written += chunk.size()) {
+                itemWriter.write(chunk);
+            }
+        } finally {
+            itemWriter.close();
+        }
+
+        return file.length();
+    }
+}
@@ -1,15 +1,21 @@
 package spring.batch;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import spring.batch.part6.ConcurrencySizing;
+import spring.batch.part6.TaskExecutorMode;
+import spring.batch.part6.VirtualThreadTaskExecutor;
 
 import java.util.concurrent.ThreadPoolExecutor;
 
+@Slf4j
 @SpringBootApplication
 @EnableBatchProcessing //배치 프로세싱을 하겠다는 @
 public class SpringBatchExApplication {
@@ -20,10 +26,22 @@ public class SpringBatchExApplication {
 
     @Bean
     @Primary
-    TaskExecutor taskExecutor() {
+    TaskExecutor taskExecutor(ConcurrencySizing concurrencySizing, @Value("${batch.task-executor:platform}") String taskExecutorMode) {
+        //batch.task-executor=virtual 이면 작업마다 virtual thread 를 띄운다.
+        //작업 수는 제한하지 않고 (partition 을 기다리는 작업이 자리를 잡고 있으면 멈춘다) DB 작업만 ConnectionLimitingDataSource 의 semaphore 로 제한한다
+        if (TaskExecutorMode.of(taskExecutorMode) == TaskExecutorMode.VIRTUAL) {
+            VirtualThreadTaskExecutor virtualThreadTaskExecutor = VirtualThreadTaskExecutor.createIfSupported();
+            if (virtualThreadTaskExecutor != null) {
+                return virtualThreadTaskExecutor;
+            }
+
+            log.warn("virtual thread 를 지원하지 않는 runtime 이므로 thread pool 을 사용합니다");
+        }
+
+        //connection pool 로 동시에 처리할 수 있는 만큼만 thread 를 띄운다
         ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
-        taskExecutor.setCorePoolSize(10);
-        taskExecutor.setMaxPoolSize(20);
+        taskExecutor.setCorePoolSize(concurrencySizing.getMaxConcurrency());
+        taskExecutor.setMaxPoolSize(concurrencySizing.getMaxConcurrency());
         taskExecutor.setThreadNamePrefix("batch-thread-");
         taskExecutor.initialize();
         return taskExecutor;
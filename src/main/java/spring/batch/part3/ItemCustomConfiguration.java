@@ -5,26 +5,29 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.FlatFileParseException;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.batch.item.file.transform.FieldSet;
 import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
 import org.springframework.batch.item.support.CompositeItemProcessor;
 import org.springframework.batch.item.support.CompositeItemWriter;
 import org.springframework.batch.item.support.builder.CompositeItemProcessorBuilder;
 import org.springframework.batch.item.support.builder.CompositeItemWriterBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import spring.batch.part5.MappedCsvItemReader;
+import spring.batch.part5.StepMetricsListener;
+import spring.batch.part6.ConcurrencySizing;
 
 import javax.persistence.EntityManagerFactory;
 import java.io.FileNotFoundException;
@@ -32,9 +35,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -44,36 +47,64 @@ public class ItemCustomConfiguration {
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final EntityManagerFactory entityManagerFactory;
+    private final TaskExecutor taskExecutor;
+    private final ConcurrencySizing concurrencySizing;
 
-    private Map<String, Person> result = new HashMap<>();
+    //partition 들이 동시에 중복 여부를 확인하므로 ConcurrentHashMap
+    private Map<String, Person> result = new ConcurrentHashMap<>();
 
-    public ItemCustomConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, EntityManagerFactory entityManagerFactory) {
+    public ItemCustomConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, EntityManagerFactory entityManagerFactory, TaskExecutor taskExecutor, ConcurrencySizing concurrencySizing) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.entityManagerFactory = entityManagerFactory;
+        this.taskExecutor = taskExecutor;
+        this.concurrencySizing = concurrencySizing;
     }
 
     @Bean
     public Job itemCustomJob() throws Exception {
         return this.jobBuilderFactory.get("itemCustomJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.itemCustomStep())
+                .start(this.itemCustomStep(null))
                 .build();
     }
 
+    //jobParameters[concurrency] 가 2 이상이면 파일을 byte 구간으로 나눠서 partition 마다 thread 하나로 읽는다
     @Bean
-    public Step itemCustomStep() throws Exception {
-        return this.stepBuilderFactory.get("itemCustomStep")
+    @JobScope
+    public Step itemCustomStep(@Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
+        int gridSize = PersonCsvFile.gridSize(concurrencySizing, concurrency);
+        if (gridSize <= 1) {
+            return faultTolerantStep("itemCustomStep", this.customItemReader());
+        }
+
+        return PersonCsvFile.partitionStep(this.stepBuilderFactory, "itemCustomStep",
+                faultTolerantStep("itemCustomWorkerStep", this.itemCustomRangeItemReader(null, null)), gridSize, this.taskExecutor);
+    }
+
+    @Bean
+    @StepScope
+    public MappedCsvItemReader<Person> itemCustomRangeItemReader(@Value("#{stepExecutionContext[startOffset]}") Long startOffset,
+                                                                 @Value("#{stepExecutionContext[endOffset]}") Long endOffset) {
+        return PersonCsvFile.rangeItemReader("itemCustomRangeItemReader", startOffset, endOffset);
+    }
+
+    private Step faultTolerantStep(String name, ItemReader<Person> itemReader) throws Exception {
+        StepMetricsListener metricsListener = new StepMetricsListener();
+
+        return this.stepBuilderFactory.get(name)
                 .<Person, Person>chunk(10)
-                .reader(this.customItemReader())
+                .reader(itemReader)
                 .processor(this.ItemProcessorForSkip("true"))
                 .writer(this.customCompositeItemWriter())
                 .listener(new SavePersonListener.SavePersonStepExecutionListener())
+                .listener(metricsListener)
                 .faultTolerant()
                 .skip(IncorrectTokenCountException.class)
                 .skipLimit(3)
                 .retry(NotFoundNameException.class)
                 .retryLimit(3)
+                .listener(metricsListener.retryListener())
                 .build();
     }
 
@@ -118,38 +149,11 @@ public class ItemCustomConfiguration {
         if (allow_duplicate) {
             return item -> item;
         } else {
-            return item -> {
-                if (result.containsKey(item.getName())) {
-                    return null;
-                } else {
-                    result.put(item.getName(), item);
-                    return item;
-                }
-            };
+            return item -> result.putIfAbsent(item.getName(), item) == null ? item : null;
         }
     }
 
-    private FlatFileItemReader<Person> customItemReader() throws Exception {
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        DelimitedLineTokenizer tokenizer  = new DelimitedLineTokenizer();
-        tokenizer.setNames("id", "name", "age", "address");
-        tokenizer.setDelimiter(",");
-        lineMapper.setLineTokenizer(tokenizer);
-        lineMapper.setFieldSetMapper(fieldSet ->  new Person(
-                fieldSet.readInt(0),
-                fieldSet.readString(1),
-                fieldSet.readString(2),
-                fieldSet.readString(3)));
-
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-                .name("customItemReader")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/test-output.csv"))
-                .linesToSkip(1)
-                .lineMapper(lineMapper)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private MappedCsvItemReader<Person> customItemReader() {
+        return PersonCsvFile.itemReader("customItemReader");
     }
 }
-
@@ -13,13 +13,10 @@ import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import spring.batch.part5.CsvItemWriter;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
@@ -100,21 +97,17 @@ public class ItemWriterConfiguration {
     }
 
     private ItemWriter<Person> csvFileItemWriter() throws Exception {
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"id", "name", "age", "address"});
-
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
-                .name("csvFileItemWriter")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/test-output.csv"))
-                .lineAggregator(lineAggregator)
-                .headerCallback(writer -> writer.write("id,이름,나이,거주지"))
-                .footerCallback(writer -> writer.write("----------------------\n"))
-                .build();
+        //BeanWrapper 대신 getter 로 바로 한줄을 만든다
+        CsvItemWriter<Person> itemWriter = new CsvItemWriter<Person>()
+                .intField(Person::getId)
+                .field(Person::getName)
+                .field(Person::getAge)
+                .field(Person::getAddress);
+        itemWriter.setName("csvFileItemWriter");
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setResource(new FileSystemResource("output/test-output.csv"));
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("----------------------\n"));
 
         itemWriter.afterPropertiesSet();
         return itemWriter;
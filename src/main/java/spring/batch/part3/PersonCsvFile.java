@@ -0,0 +1,65 @@
+package spring.batch.part3;
+
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.StringUtils;
+import spring.batch.part5.CsvByteRangePartitioner;
+import spring.batch.part5.MappedCsvItemReader;
+import spring.batch.part6.ConcurrencySizing;
+
+/**
+ * savePersonJob, itemCustomJob 이 읽는 person csv 파일.
+ * jobParameters[concurrency] 가 2 이상이면 파일을 byte 구간으로 나눠서 공유 TaskExecutor 의 thread 로 partition 마다 따로 읽는다.
+ */
+final class PersonCsvFile {
+
+    static final String INPUT_FILE = "output/test-output.csv";
+
+    private PersonCsvFile() {
+    }
+
+    //concurrency 가 없으면 partition 하지 않는다
+    static int gridSize(ConcurrencySizing concurrencySizing, String concurrency) {
+        return StringUtils.hasText(concurrency) ? concurrencySizing.getConcurrency(concurrency) : 1;
+    }
+
+    //머리글은 첫 구간에서 제외하고, workerStep 을 partition 마다 taskExecutor 로 실행
+    static Step partitionStep(StepBuilderFactory stepBuilderFactory, String name, Step workerStep, int gridSize, TaskExecutor taskExecutor) {
+        return stepBuilderFactory.get(name)
+                .partitioner(workerStep.getName(), new CsvByteRangePartitioner(new FileSystemResource(INPUT_FILE), 1))
+                .step(workerStep)
+                .gridSize(gridSize)
+                .taskExecutor(taskExecutor)
+                .build();
+    }
+
+    //memory-map 한 파일에서 byte 단위로 필드를 찾아 바로 Person 을 만들고, 재시작은 byte offset 으로 한다
+    static MappedCsvItemReader<Person> itemReader(String name) {
+        MappedCsvItemReader<Person> itemReader = personItemReader();
+        itemReader.setName(name);
+        itemReader.setLinesToSkip(1);
+        return itemReader;
+    }
+
+    //partition 의 byte 구간만 읽는다. 머리글은 partitioner 가 이미 제외했다
+    static MappedCsvItemReader<Person> rangeItemReader(String name, long startOffset, long endOffset) {
+        MappedCsvItemReader<Person> itemReader = personItemReader();
+        itemReader.setName(name);
+        itemReader.setStartOffset(startOffset);
+        itemReader.setEndOffset(endOffset);
+        return itemReader;
+    }
+
+    private static MappedCsvItemReader<Person> personItemReader() {
+        return new MappedCsvItemReader<>(
+                new FileSystemResource(INPUT_FILE),
+                4,
+                record -> new Person(
+                        record.readInt(0),
+                        record.readString(1),
+                        record.readString(2),
+                        record.readString(3)));
+    }
+}
@@ -6,25 +6,24 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.batch.item.support.CompositeItemWriter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import spring.batch.part5.MappedCsvItemReader;
+import spring.batch.part6.ConcurrencySizing;
 
 import javax.persistence.EntityManagerFactory;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Configuration
 @Slf4j
@@ -33,34 +32,60 @@ public class SavePersonConfiguration {
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final EntityManagerFactory entityManagerFactory;
+    private final TaskExecutor taskExecutor;
+    private final ConcurrencySizing concurrencySizing;
 
-    private Map<String, Person> result = new HashMap<>();
+    //partition 들이 동시에 중복 여부를 확인하므로 ConcurrentHashMap
+    private Map<String, Person> result = new ConcurrentHashMap<>();
 
-    public SavePersonConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, EntityManagerFactory entityManagerFactory) {
+    public SavePersonConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, EntityManagerFactory entityManagerFactory, TaskExecutor taskExecutor, ConcurrencySizing concurrencySizing) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.entityManagerFactory = entityManagerFactory;
+        this.taskExecutor = taskExecutor;
+        this.concurrencySizing = concurrencySizing;
     }
 
     @Bean
     public Job savePersonJob() throws Exception {
         return this.jobBuilderFactory.get("itemCustomJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.savePersonStep(null))
+                .start(this.savePersonStep(null, null))
                 .listener(new SavePersonListener.SavePersonJobExecutionListener())
                 .listener(new SavePersonListener.SavePersonAnnotationJobExecutionListener())
                 .build();
     }
 
+    //jobParameters[concurrency] 가 2 이상이면 파일을 byte 구간으로 나눠서 partition 마다 thread 하나로 읽는다
     @Bean
     @JobScope
-    public Step savePersonStep(@Value("#{jobParameters[allow_duplicate]}") String allow_duplicate) throws Exception {
-        return this.stepBuilderFactory.get("itemCustomStep")
+    public Step savePersonStep(@Value("#{jobParameters[allow_duplicate]}") String allow_duplicate,
+                               @Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
+        int gridSize = PersonCsvFile.gridSize(concurrencySizing, concurrency);
+        if (gridSize <= 1) {
+            return this.stepBuilderFactory.get("itemCustomStep")
+                    .<Person, Person>chunk(10)
+                    .reader(this.customItemReader())
+                    .processor(this.customItemProcessor(Boolean.parseBoolean(allow_duplicate)))
+                    .writer(this.customCompositeItemWriter())
+                    .build();
+        }
+
+        Step workerStep = this.stepBuilderFactory.get("savePersonWorkerStep")
                 .<Person, Person>chunk(10)
-                .reader(this.customItemReader())
+                .reader(this.savePersonRangeItemReader(null, null))
                 .processor(this.customItemProcessor(Boolean.parseBoolean(allow_duplicate)))
                 .writer(this.customCompositeItemWriter())
                 .build();
+
+        return PersonCsvFile.partitionStep(this.stepBuilderFactory, "itemCustomStep", workerStep, gridSize, this.taskExecutor);
+    }
+
+    @Bean
+    @StepScope
+    public MappedCsvItemReader<Person> savePersonRangeItemReader(@Value("#{stepExecutionContext[startOffset]}") Long startOffset,
+                                                                 @Value("#{stepExecutionContext[endOffset]}") Long endOffset) {
+        return PersonCsvFile.rangeItemReader("savePersonRangeItemReader", startOffset, endOffset);
     }
 
     private CompositeItemWriter<Person> customCompositeItemWriter() throws Exception {
@@ -86,38 +111,11 @@ public class SavePersonConfiguration {
         if (allow_duplicate) {
             return item -> item;
         } else {
-            return item -> {
-                if (result.containsKey(item.getName())) {
-                    return null;
-                } else {
-                    result.put(item.getName(), item);
-                    return item;
-                }
-            };
+            return item -> result.putIfAbsent(item.getName(), item) == null ? item : null;
         }
     }
 
-    private FlatFileItemReader<Person> customItemReader() throws Exception {
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        DelimitedLineTokenizer tokenizer  = new DelimitedLineTokenizer();
-        tokenizer.setNames("id", "name", "age", "address");
-        tokenizer.setDelimiter(",");
-        lineMapper.setLineTokenizer(tokenizer);
-        lineMapper.setFieldSetMapper(fieldSet ->  new Person(
-                fieldSet.readInt(0),
-                fieldSet.readString(1),
-                fieldSet.readString(2),
-                fieldSet.readString(3)));
-
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-                .name("customItemReader")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/test-output.csv"))
-                .linesToSkip(1)
-                .lineMapper(lineMapper)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private MappedCsvItemReader<Person> customItemReader() {
+        return PersonCsvFile.itemReader("customItemReader");
     }
 }
-
@@ -1,6 +1,8 @@
 package spring.batch.part4_1;
 
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.stream.LongStream;
 
 public enum Level {
     VIP(500_000, null),
@@ -16,7 +18,7 @@ public enum Level {
         this.nextLevel = nextLevel;
     }
 
-    public static boolean availableLevelUp(Level level, int totalAmount) {
+    public static boolean availableLevelUp(Level level, long totalAmount) {
         if(Objects.isNull(level)) {
             return false;
         }
@@ -28,7 +30,7 @@ public enum Level {
         return totalAmount  >= level.nextAmount;
     }
 
-    public static Level getNextLevel(int totalAmount) {
+    public static Level getNextLevel(long totalAmount) {
         if (totalAmount >= Level.VIP.nextAmount) {
             return VIP;
         }
@@ -47,4 +49,37 @@ public enum Level {
 
         return NORMAL;
     }
+
+    //getNextLevel 결과가 level 이 되는 주문 금액 합계의 최소값. 도달할 수 없는 등급이면 null
+    public static Long getMinAmount(Level level) {
+        for (long amount : amountBoundaries()) {
+            if (getNextLevel(amount) == level) {
+                return amount;
+            }
+        }
+
+        return null;
+    }
+
+    //getNextLevel 결과가 level 이 되는 주문 금액 합계의 상한(미포함). 상한이 없으면 null
+    public static Long getMaxAmount(Level level) {
+        long[] boundaries = amountBoundaries();
+        Long maxAmount = null;
+
+        for (int i = 0; i < boundaries.length; i++) {
+            if (getNextLevel(boundaries[i]) == level) {
+                maxAmount = i + 1 < boundaries.length ? boundaries[i + 1] : null;
+            }
+        }
+
+        return maxAmount;
+    }
+
+    //등급이 바뀌는 주문 금액 경계값 (0 포함, 오름차순)
+    private static long[] amountBoundaries() {
+        return LongStream.concat(LongStream.of(0), Arrays.stream(values()).mapToLong(level -> level.nextAmount))
+                .distinct()
+                .sorted()
+                .toArray();
+    }
 }
@@ -0,0 +1,110 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterWrite;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.BeforeWrite;
+import org.springframework.batch.core.annotation.OnWriteError;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 이번 실행에서 바뀐 회원 등급을 "NORMAL->GOLD" 처럼 변경 전, 변경 후 등급 별로 세어 step ExecutionContext 에 남긴다.
+ * 등급은 한번에 여러 단계를 올라갈 수 있고 같은 날 먼저 실행된 job 도 updated_date 를 바꾸므로, db 의 현재 등급 대신 write 하는 chunk 에서 센다.
+ * LevelUpJobExecutionListener 가 step(partition) 별 값을 합친다.
+ *
+ * annotation listener 이므로 .listener(new LevelUpCountListener()) 로 등록한다.
+ * writer 가 등급을 바꾸기 전에 세고 write 가 끝나면 현재 step 에 더하므로, 여러 thread, 여러 partition 이 같은 listener 를 사용해도 된다.
+ */
+public class LevelUpCountListener {
+
+    private static final String KEY_PREFIX = "levelUpCount.";
+
+    private final ThreadLocal<Map<String, Long>> chunkCounts = new ThreadLocal<>();
+
+    //재시작한 step 은 이전 실행의 ExecutionContext 를 이어받으므로 이번 실행에서 센 값만 남도록 지운다
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        synchronized (executionContext) {
+            executionContext.entrySet().stream()
+                    .map(Map.Entry::getKey)
+                    .filter(key -> key.startsWith(KEY_PREFIX))
+                    .collect(Collectors.toList())
+                    .forEach(executionContext::remove);
+        }
+    }
+
+    //등급을 올릴 수 없는 회원은 processor 가 걸러내지만, remote chunking manager 처럼 processor 전에 쓰는 경우도 있으므로 다시 확인한다
+    @BeforeWrite
+    public void beforeWrite(List<?> items) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Object item : items) {
+            if (item instanceof User && ((User) item).availableLevelUp()) {
+                User user = (User) item;
+                counts.merge(key(user.getLevel(), Level.getNextLevel(user.getTotalAmount())), 1L, Long::sum);
+            }
+        }
+
+        chunkCounts.set(counts);
+    }
+
+    @AfterWrite
+    public void afterWrite(List<?> items) {
+        Map<String, Long> counts = chunkCounts.get();
+        chunkCounts.remove();
+
+        StepContext context = StepSynchronizationManager.getContext();
+        if (counts != null && context != null) {
+            counts.forEach((key, count) -> increment(context.getStepExecution().getExecutionContext(), key, count));
+        }
+    }
+
+    @OnWriteError
+    public void onWriteError(Exception e, List<?> items) {
+        chunkCounts.remove();
+    }
+
+    //writer 대신 processor, tasklet 에서 등급을 바꾸는 step 은 직접 기록한다
+    public static void increment(StepExecution stepExecution, Level from, Level to, long count) {
+        if (count == 0) {
+            return;
+        }
+
+        increment(stepExecution.getExecutionContext(), key(from, to), count);
+    }
+
+    //"NORMAL->GOLD" 별 건수를 합친다
+    public static Map<String, Long> sum(Collection<StepExecution> stepExecutions) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (StepExecution stepExecution : stepExecutions) {
+            for (Map.Entry<String, Object> entry : stepExecution.getExecutionContext().entrySet()) {
+                if (entry.getKey().startsWith(KEY_PREFIX)) {
+                    counts.merge(entry.getKey().substring(KEY_PREFIX.length()), ((Number) entry.getValue()).longValue(), Long::sum);
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    //multi thread step 은 thread 들이 같은 ExecutionContext 를 사용한다
+    private static void increment(ExecutionContext executionContext, String key, long count) {
+        synchronized (executionContext) {
+            //db 에서 다시 읽은 값은 Integer 일 수도 있다
+            Object previous = executionContext.get(key);
+            executionContext.putLong(key, (previous == null ? 0 : ((Number) previous).longValue()) + count);
+        }
+    }
+
+    private static String key(Level from, Level to) {
+        return KEY_PREFIX + from.name() + "->" + to.name();
+    }
+}
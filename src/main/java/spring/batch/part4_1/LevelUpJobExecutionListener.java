@@ -1,19 +1,37 @@
 package spring.batch.part4_1;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
 
-import java.time.LocalDate;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * 회원 등급 Job 이 끝나면 이번 실행의 등급 변경(변경 전->변경 후) 건수와 step(partition) 별 처리량을 output/ 에 json 으로 남긴다.
+ * 변경 건수는 LevelUpCountListener 가 step ExecutionContext 에 남긴 값을 합친다.
+ * 다른 thread 나 db 를 거쳐 실행된 partition 의 StepExecution 은 jobExecution 에 있는 것과 다른 객체이므로 JobExplorer 로 다시 읽는다.
+ */
 @Slf4j
 public class LevelUpJobExecutionListener implements JobExecutionListener {
 
-    private final UserRepository userRepository;
+    private static final String OUTPUT_DIRECTORY = "output";
 
-    public LevelUpJobExecutionListener(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    private final JobExplorer jobExplorer;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public LevelUpJobExecutionListener(JobExplorer jobExplorer) {
+        this.jobExplorer = jobExplorer;
     }
 
     @Override
@@ -21,12 +39,70 @@ public class LevelUpJobExecutionListener implements JobExecutionListener {
 
     @Override
     public void afterJob(JobExecution jobExecution) {
-        Collection<User> users = userRepository.findAllByUpdatedDate(LocalDate.now());
+        Collection<StepExecution> stepExecutions = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions();
+        Map<String, Long> transitions = LevelUpCountListener.sum(stepExecutions);
+        long total = transitions.values().stream().mapToLong(Long::longValue).sum();
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (StepExecution stepExecution : stepExecutions) {
+            steps.add(step(stepExecution));
+        }
+
+        long time = millis(jobExecution.getStartTime(), jobExecution.getEndTime());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("job", jobExecution.getJobInstance().getJobName());
+        report.put("jobExecutionId", jobExecution.getId());
+        report.put("status", jobExecution.getStatus().name());
+        report.put("millis", time);
+        report.put("levelUpCount", total);
+        report.put("levelUpCountByTransition", transitions);
+        report.put("steps", steps);
 
-        long time = jobExecution.getEndTime().getTime() - jobExecution.getStartTime().getTime();
         log.info("회원 등급 업데이트 배치 프로그램");
         log.info("----------------------------");
-        log.info("총 데이처 처리 {}건, 처리 시긴 {}millis", users.size(), time);
+        log.info("총 데이처 처리 {}건, 처리 시긴 {}millis", total, time);
+        write(report);
+    }
+
+    //partition step 이름은 "{step}:{partition}"
+    private Map<String, Object> step(StepExecution stepExecution) {
+        String stepName = stepExecution.getStepName();
+        int separator = stepName.indexOf(':');
+        long millis = millis(stepExecution.getStartTime(), stepExecution.getEndTime());
+
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("step", separator < 0 ? stepName : stepName.substring(0, separator));
+        step.put("partition", separator < 0 ? null : stepName.substring(separator + 1));
+        step.put("status", stepExecution.getStatus().name());
+        step.put("read", stepExecution.getReadCount());
+        step.put("write", stepExecution.getWriteCount());
+        step.put("filter", stepExecution.getFilterCount());
+        step.put("skip", stepExecution.getSkipCount());
+        step.put("commit", stepExecution.getCommitCount());
+        step.put("rollback", stepExecution.getRollbackCount());
+        step.put("millis", millis);
+        step.put("itemsPerSecond", stepExecution.getWriteCount() * 1000L / Math.max(1, millis));
+        return step;
+    }
+
+    private void write(Map<String, Object> report) {
+        File file = new File(OUTPUT_DIRECTORY, report.get("job") + "_" + report.get("jobExecutionId") + "_report.json");
+        try {
+            file.getParentFile().mkdirs();
+            objectMapper.writeValue(file, report);
+            log.info("실행 결과 {}", file.getPath());
+        } catch (IOException e) {
+            log.warn("실행 결과를 {} 에 쓰지 못했습니다", file.getPath(), e);
+        }
+    }
+
+    //종료 시각이 없으면 지금까지 걸린 시간
+    private static long millis(Date start, Date end) {
+        if (start == null) {
+            return 0;
+        }
 
+        return (end == null ? System.currentTimeMillis() : end.getTime()) - start.getTime();
     }
 }
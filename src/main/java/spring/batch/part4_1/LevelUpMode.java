@@ -0,0 +1,20 @@
+package spring.batch.part4_1;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * 등급 업데이트 step 방식. jobParameters[levelUpMode] 로 선택한다. (chunk, sql, projection)
+ */
+public enum LevelUpMode {
+    CHUNK,
+    SQL,
+    PROJECTION;
+
+    public static LevelUpMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return CHUNK;
+        }
+
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,23 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+
+public class LevelUpModeDecide implements JobExecutionDecider {
+
+    private final String key;
+
+    public LevelUpModeDecide(String key) {
+        this.key = key;
+    }
+
+    //key 에 해당하는 value 의 LevelUpMode 이름을 상태로 return 한다
+    @Override
+    public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+        String value = jobExecution.getJobParameters().getString(key);
+
+        return new FlowExecutionStatus(LevelUpMode.of(value).name());
+    }
+}
@@ -0,0 +1,70 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 회원 등급 업데이트를 db 에서 처리한다.
+ * 변경 전, 변경 후 등급마다 orders.amount 를 user_id 별로 집계한 결과와 user 를 join 해서 update 한번씩만 실행하므로
+ * 회원, 주문 데이터를 애플리케이션으로 가져오지 않는다.
+ * update 건수는 변경 전->변경 후 등급 별로 LevelUpCountListener 에 기록한다.
+ */
+public class LevelUpSqlTasklet implements Tasklet {
+
+    private static final String UPDATE_SQL = "update user set level = :level, updated_date = :updatedDate " +
+            "where level = :from " +
+            "and id in (select user_id from orders group by user_id having sum(amount) >= :minAmount%s)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public LevelUpSqlTasklet(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        LocalDate updatedDate = LocalDate.now();
+
+        for (Level level : Level.values()) {
+            Long minAmount = Level.getMinAmount(level);
+            if (Objects.isNull(minAmount)) {
+                continue;
+            }
+
+            Long maxAmount = Level.getMaxAmount(level);
+            String sql = String.format(UPDATE_SQL, Objects.isNull(maxAmount) ? "" : " and sum(amount) < :maxAmount");
+
+            //minAmount 이상이면 등급을 올릴 수 있는 현재 등급들
+            List<Level> levels = Arrays.stream(Level.values())
+                    .filter(current -> Level.availableLevelUp(current, minAmount))
+                    .collect(Collectors.toList());
+
+            for (Level from : levels) {
+                MapSqlParameterSource parameters = new MapSqlParameterSource()
+                        .addValue("level", level.name())
+                        .addValue("updatedDate", Date.valueOf(updatedDate))
+                        .addValue("from", from.name())
+                        .addValue("minAmount", minAmount)
+                        .addValue("maxAmount", maxAmount);
+
+                int updated = jdbcTemplate.update(sql, parameters);
+                contribution.incrementWriteCount(updated);
+                LevelUpCountListener.increment(chunkContext.getStepContext().getStepExecution(), from, level, updated);
+            }
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,44 @@
+package spring.batch.part4_1;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class ReconcileTotalAmountConfiguration {
+
+    private final String JOB_NAME = "reconcileTotalAmountJob";
+    private final int RANGE_SIZE;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final UserRepository userRepository;
+
+    public ReconcileTotalAmountConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, @Value("${batch.chunk-size:1000}") int chunkSize) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.userRepository = userRepository;
+        this.RANGE_SIZE = chunkSize * 10;
+    }
+
+    @Bean(JOB_NAME)
+    public Job reconcileTotalAmountJob() {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.reconcileTotalAmountStep())
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_reconcileTotalAmountStep")
+    public Step reconcileTotalAmountStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_reconcileTotalAmountStep")
+                .tasklet(new ReconcileTotalAmountTasklet(userRepository, RANGE_SIZE))
+                .build();
+    }
+}
@@ -0,0 +1,49 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * user.total_amount 를 orders 기준으로 다시 집계한다.
+ * id 구간 단위로 나눠서 update 하고 구간마다 commit 하므로, 실패해도 재시작하면 마지막 구간부터 이어서 처리한다.
+ */
+public class ReconcileTotalAmountTasklet implements Tasklet {
+
+    private static final String NEXT_ID = "nextId";
+
+    private final UserRepository userRepository;
+    private final int rangeSize;
+
+    public ReconcileTotalAmountTasklet(UserRepository userRepository, int rangeSize) {
+        this.userRepository = userRepository;
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        if (!executionContext.containsKey(NEXT_ID)) {
+            if (userRepository.count() == 0) {
+                return RepeatStatus.FINISHED;
+            }
+            executionContext.putLong(NEXT_ID, userRepository.findMinId());
+        }
+
+        long minId = executionContext.getLong(NEXT_ID);
+        long maxId = minId + rangeSize - 1;
+
+        int updated = userRepository.updateTotalAmount(minId, maxId);
+        contribution.incrementWriteCount(updated);
+        executionContext.putLong(NEXT_ID, maxId + 1);
+
+        if (maxId >= userRepository.findMaxId()) {
+            return RepeatStatus.FINISHED;
+        }
+
+        return RepeatStatus.CONTINUABLE; //다음 id 구간을 새 transaction 에서 처리
+    }
+}
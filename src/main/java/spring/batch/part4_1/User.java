@@ -1,13 +1,18 @@
 package spring.batch.part4_1;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import spring.batch.part5.Orders;
 
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -25,26 +30,35 @@ public class User {
     @Enumerated(EnumType.STRING)
     private Level level = Level.NORMAL;
 
-    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.EAGER)
+    //등급 계산에 필요한 건 주문 금액 합계뿐이므로 orders 는 필요할 때만 조회
+    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
-    private List<Orders> orders;
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Setter(AccessLevel.NONE)
+    private List<Orders> orders = new ArrayList<>();
+
+    //orders.amount 합계. addOrder 로 주문이 추가될 때마다 갱신된다
+    @Setter(AccessLevel.NONE)
+    private long totalAmount;
 
     private LocalDate updatedDate;
 
     @Builder
     public User(String username, List<Orders> orders) {
         this.username = username;
-        this.orders = orders;
+        if (orders != null) {
+            orders.forEach(this::addOrder);
+        }
     }
 
-    public boolean availableLevelUp() {
-        return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
+    public void addOrder(Orders order) {
+        this.orders.add(order);
+        this.totalAmount += order.getAmount();
     }
 
-    private int getTotalAmount() {
-        return orders.stream()
-                .mapToInt(Orders::getAmount)
-                .sum();
+    public boolean availableLevelUp() {
+        return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
     }
 
     public Level levelUp() {
@@ -0,0 +1,76 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import spring.batch.part5.Orders;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 회원과 주문을 jdbc batch insert 로 저장한다.
+ * IDENTITY 전략이라 hibernate 는 insert 를 batch 로 묶지 못하고, @JoinColumn 때문에 주문마다 user_id update 가 한번 더 나간다.
+ * 회원 insert 후 생성된 id 를 받아서 주문 insert 에 user_id 를 같이 넣는다.
+ */
+public class UserBulkInsertItemWriter implements ItemWriter<User> {
+
+    private static final String INSERT_USER_SQL = "insert into user (username, level, total_amount) values (?, ?, ?)";
+    private static final String INSERT_ORDERS_SQL = "insert into orders (item_name, amount, created_date, user_id) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserBulkInsertItemWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void write(List<? extends User> users) throws Exception {
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> insertUsers(connection, users));
+
+        List<Object[]> orders = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            user.setId(ids.get(i));
+
+            for (Orders order : user.getOrders()) {
+                orders.add(new Object[]{order.getItemName(), order.getAmount(), Date.valueOf(order.getCreatedDate()), user.getId()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ORDERS_SQL, orders);
+    }
+
+    private List<Long> insertUsers(Connection connection, List<? extends User> users) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (User user : users) {
+                ps.setString(1, user.getUsername());
+                ps.setString(2, user.getLevel().name());
+                ps.setLong(3, user.getTotalAmount());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            List<Long> ids = new ArrayList<>(users.size());
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                while (keys.next()) {
+                    ids.add(keys.getLong(1));
+                }
+            }
+
+            if (ids.size() != users.size()) {
+                throw new IncorrectResultSizeDataAccessException("생성된 회원 id 수가 다릅니다", users.size(), ids.size());
+            }
+
+            return ids;
+        }
+    }
+}
@@ -1,37 +1,55 @@
 package spring.batch.part4_1;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
 import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.util.StringUtils;
+import spring.batch.part5.AdaptiveCompletionPolicy;
+import spring.batch.part5.CsvItemWriter;
+import spring.batch.part5.DailyOrderStatisticsItemReader;
 import spring.batch.part5.JobParametersDecide;
 import spring.batch.part5.OrderStatistics;
+import spring.batch.part5.PartFileMergeTasklet;
+import spring.batch.part5.PrefetchingItemStreamReader;
+import spring.batch.part5.StepMetricsListener;
+import spring.batch.part5.ThrottledTaskExecutor;
+import spring.batch.part5.YearMonthPartitioner;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
 import java.time.Year;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,125 +58,251 @@ import java.util.Map;
 public class UserConfiguration {
 
     private final String JOB_NAME = "userJob";
-    private final int CHUNK = 1000;
+    private static final String STATISTICS_FILE = "statisticsFile";
+    private final int CHUNK;
+    private final int DATASET_SIZE;
+    private final int STATISTICS_CONCURRENCY;
+    private final int MIN_CHUNK;
+    private final int MAX_CHUNK;
+    private final long CHUNK_TARGET_MILLIS;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+    private final JobExplorer jobExplorer;
 
-    public UserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+    public UserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor, JobExplorer jobExplorer, @Value("${batch.chunk-size:1000}") int chunkSize, @Value("${batch.dataset-size:40000}") int datasetSize, @Value("${batch.statistics-concurrency:4}") int statisticsConcurrency, @Value("${batch.chunk.min-size:10}") int minChunkSize, @Value("${batch.chunk.max-size:10000}") int maxChunkSize, @Value("${batch.chunk.target-millis:1000}") long chunkTargetMillis) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.taskExecutor = taskExecutor;
+        this.jobExplorer = jobExplorer;
+        this.CHUNK = chunkSize;
+        this.DATASET_SIZE = datasetSize;
+        this.STATISTICS_CONCURRENCY = statisticsConcurrency;
+        this.MIN_CHUNK = minChunkSize;
+        this.MAX_CHUNK = maxChunkSize;
+        this.CHUNK_TARGET_MILLIS = chunkTargetMillis;
     }
 
     @Bean(JOB_NAME)
     public Job userJob() throws Exception {
+        LevelUpModeDecide levelUpModeDecide = new LevelUpModeDecide("levelUpMode");
+        JobParametersDecide jobParametersDecide = new JobParametersDecide("date");
+        JobParametersDecide statisticsFileDecide = new JobParametersDecide(STATISTICS_FILE);
+
         return this.jobBuilderFactory.get(JOB_NAME)
                 .incrementer(new RunIdIncrementer())
+                .listener(new LevelUpJobExecutionListener(jobExplorer))
                 .start(this.saveUserStep())
-                .next(this.userLevelUpStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
-                .next(new JobParametersDecide("date"))
-                .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null))
-                .build()
+                .next(levelUpModeDecide)
+                    .on(LevelUpMode.SQL.name()).to(this.userLevelUpSqlStep())
+                    .on(ExitStatus.COMPLETED.getExitCode()).to(jobParametersDecide)
+                .from(levelUpModeDecide)
+                    .on(LevelUpMode.PROJECTION.name()).to(this.userLevelUpProjectionStep())
+                    .on(ExitStatus.COMPLETED.getExitCode()).to(jobParametersDecide)
+                .from(levelUpModeDecide)
+                    .on("*").to(this.userLevelUpStep())
+                    .on(ExitStatus.COMPLETED.getExitCode()).to(jobParametersDecide)
+                .from(jobParametersDecide)
+                    .on(JobParametersDecide.CONTINUE.getName()).to(this.orderStatisticsManagerStep(null))
+                    .next(statisticsFileDecide)
+                    .on(JobParametersDecide.CONTINUE.getName()).to(this.orderStatisticsMergeStep())
+                .from(statisticsFileDecide)
+                    .on("*").end()
+                .from(jobParametersDecide)
+                    .on("*").end()
+                .end()
                 .build();
     }
 
-    @Bean(JOB_NAME+"_orderStatisticsStep")
+    //date 가 "2020-01..2020-12" 같은 구간이면 월별 partition 으로 나눠서 통계 파일을 동시에 만든다
+    @Bean(JOB_NAME+"_orderStatisticsStep.manager")
     @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
+    public Step orderStatisticsManagerStep(@Value("#{jobParameters[date]}") String date) throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME+"_orderStatisticsStep.manager")
+                .partitioner(JOB_NAME+"_orderStatisticsStep", new YearMonthPartitioner(date)) //ExecutionContext 에 월 할당
+                .step(orderStatisticsStep())
+                .taskExecutor(new ThrottledTaskExecutor(this.taskExecutor, STATISTICS_CONCURRENCY))
+                .gridSize(STATISTICS_CONCURRENCY)
+                .build();
+    }
+
+    @Bean(JOB_NAME+"_orderStatisticsStep")
+    public Step orderStatisticsStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME+"_orderStatisticsStep")
                 .<OrderStatistics, OrderStatistics> chunk(CHUNK)
-                .reader(orderStatisticsItemReader(date))
-                .writer(orderStatisticsItemWriter(date))
+                .reader(orderStatisticsItemReader(null))
+                .writer(orderStatisticsItemWriter(null, null, null))
+                .listener(new StepMetricsListener())
                 .build();
     }
 
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
+    //jobParameters[statisticsFile] 이 있으면 월별 파일 대신 part 파일을 쓰고, orderStatisticsMergeStep 이 월 순서대로 합친다
+    @Bean(JOB_NAME+"_orderStatisticsItemWriter")
+    @StepScope
+    public FlatFileItemWriter<OrderStatistics> orderStatisticsItemWriter(@Value("#{stepExecutionContext[date]}") String date,
+                                                                         @Value("#{jobParameters[statisticsFile]}") String statisticsFile,
+                                                                         @Value("#{stepExecution.jobExecution.jobInstance.id}") Long jobInstanceId) throws Exception {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월 _일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount","date"});
+        if (StringUtils.hasText(statisticsFile)) {
+            //yyyy-MM 이름이므로 파일 이름 순서가 월 순서. 머리글은 합칠 때 한번만 쓴다
+            Path part = statisticsPartDirectory(jobInstanceId).resolve(yearMonth + PartFileMergeTasklet.PART_SUFFIX);
+            return CsvItemWriter.orderStatistics(new FileSystemResource(part.toFile()), JOB_NAME+"_orderStatisticsItemWriter", null);
+        }
 
-       DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-       lineAggregator.setDelimiter(",");
-       lineAggregator.setFieldExtractor(fieldExtractor);
+        return CsvItemWriter.orderStatistics(new FileSystemResource("output/" + fileName), JOB_NAME+"_orderStatisticsItemWriter");
+    }
 
-       //step 이 끝나는 시점에 한번에 파일 생성
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME+"_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount_date"))
+    @Bean(JOB_NAME+"_orderStatisticsMergeStep")
+    public Step orderStatisticsMergeStep() {
+        return this.stepBuilderFactory.get(JOB_NAME+"_orderStatisticsMergeStep")
+                .tasklet(orderStatisticsMergeTasklet(null, null))
                 .build();
-        itemWriter.afterPropertiesSet();
+    }
 
-        return itemWriter;
+    //머리글은 한번만 쓰고 월별 part 파일을 이어 붙인다
+    @Bean(JOB_NAME+"_orderStatisticsMergeTasklet")
+    @StepScope
+    public PartFileMergeTasklet orderStatisticsMergeTasklet(@Value("#{jobParameters[statisticsFile]}") String statisticsFile,
+                                                            @Value("#{stepExecution.jobExecution.jobInstance.id}") Long jobInstanceId) {
+        return new PartFileMergeTasklet(statisticsPartDirectory(jobInstanceId), Paths.get("output", statisticsFile), CsvItemWriter.ORDER_STATISTICS_HEADER, null, StandardCharsets.UTF_8);
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
+    //재시작해도 완료된 partition 의 part 파일을 그대로 쓰도록 job instance 별 디렉토리
+    private Path statisticsPartDirectory(Long jobInstanceId) {
+        return Paths.get("output", "parts", JOB_NAME + "_" + jobInstanceId);
+    }
 
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
+    @Bean(JOB_NAME+"_orderStatisticsItemReader")
+    @StepScope
+    public ItemStreamReader<OrderStatistics> orderStatisticsItemReader(@Value("#{stepExecutionContext[date]}") String date) {
+        YearMonth yearMonth = YearMonth.parse(date);
 
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
+        //한달치 주문을 한번만 읽으면서 일별로 합산
+        DailyOrderStatisticsItemReader itemReader = new DailyOrderStatisticsItemReader(this.dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), CHUNK);
+        itemReader.setName(JOB_NAME+"_orderStatisticsItemReader");
 
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK)
-                .name(JOB_NAME+"_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-
-        itemReader.afterPropertiesSet();
-        return itemReader;
+        return new PrefetchingItemStreamReader<>(itemReader, CHUNK);
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .<User, User>chunk(CHUNK)
+                .reader(new UserGeneratorItemReader(DATASET_SIZE))
+                .writer(new UserBulkInsertItemWriter(dataSource))
                 .build();
     }
 
     @Bean(JOB_NAME+"_userLevelUpStep")
     public Step userLevelUpStep() throws Exception {
+        AdaptiveCompletionPolicy completionPolicy = completionPolicy();
+
         return  this.stepBuilderFactory.get(JOB_NAME+"_userLevelUpStep")
-                .<User, User>chunk(CHUNK)
+                .<User, User>chunk(completionPolicy)
                 .reader(itemReader())
                 .processor(itemProcessor())
-                .writer(itemWriter())
+                .writer(userItemWriter(null))
+                .listener((ChunkListener) completionPolicy)
+                .listener((StepExecutionListener) completionPolicy)
+                .listener(new StepMetricsListener())
+                .listener(new LevelUpCountListener())
+                .build();
+    }
+
+    //levelUpMode=sql 이면 chunk 대신 실행되는 step
+    @Bean(JOB_NAME + "_userLevelUpSqlStep")
+    public Step userLevelUpSqlStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpSqlStep")
+                .tasklet(new LevelUpSqlTasklet(dataSource))
+                .listener(new LevelUpCountListener())
                 .build();
     }
 
-    private ItemWriter<? super User> itemWriter() {
-        return users -> {
-            users.forEach(u -> {
-                u.levelUp();
-                userRepository.save(u);
-            });
+    //levelUpMode=projection 이면 entity 대신 (id, level, total_amount) 만 읽어서 처리하는 step
+    @Bean(JOB_NAME + "_userLevelUpProjectionStep")
+    public Step userLevelUpProjectionStep() throws Exception {
+        AdaptiveCompletionPolicy completionPolicy = completionPolicy();
+
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpProjectionStep")
+                .<UserSummary, UserSummary>chunk(completionPolicy)
+                .reader(userSummaryItemReader())
+                .processor(userSummaryItemProcessor())
+                .writer(userSummaryItemWriter())
+                .listener((ChunkListener) completionPolicy)
+                .listener((StepExecutionListener) completionPolicy)
+                .listener(new StepMetricsListener())
+                .listener(new LevelUpCountListener())
+                .build();
+    }
+
+    //CHUNK 부터 시작해서 chunk 하나가 CHUNK_TARGET_MILLIS 안에 commit 되도록 크기를 조절한다
+    private AdaptiveCompletionPolicy completionPolicy() {
+        return new AdaptiveCompletionPolicy(CHUNK, MIN_CHUNK, MAX_CHUNK, CHUNK_TARGET_MILLIS);
+    }
+
+    private ItemStreamReader<UserSummary> userSummaryItemReader() throws Exception {
+        Map<String, Order> sortKey = new HashMap<>();
+        sortKey.put("id", Order.ASCENDING);
+
+        //total_amount 는 주문 저장 시 같이 갱신되므로 orders 와 join 하지 않고 페이지당 쿼리 한번으로 읽는다
+        JdbcPagingItemReader<UserSummary> itemReader = new JdbcPagingItemReaderBuilder<UserSummary>()
+                .dataSource(this.dataSource)
+                .rowMapper((resultSet, i) -> new UserSummary(
+                        resultSet.getLong(1),
+                        Level.valueOf(resultSet.getString(2)),
+                        resultSet.getLong(3)))
+                .pageSize(CHUNK)
+                .name(JOB_NAME + "_userSummaryItemReader")
+                .selectClause("id, level, total_amount")
+                .fromClause("user")
+                .sortKeys(sortKey)
+                .build();
+
+        itemReader.afterPropertiesSet();
+        return new PrefetchingItemStreamReader<>(itemReader, CHUNK);
+    }
+
+    private ItemProcessor<? super UserSummary, ? extends UserSummary> userSummaryItemProcessor() {
+        return user -> {
+            if (user.availableLevelUp()) {
+                //writer 에는 바뀐 등급만 넘어가므로 변경 전 등급은 여기서 기록한다
+                Level level = user.getLevel();
+                LevelUpCountListener.increment(StepSynchronizationManager.getContext().getStepExecution(), level, user.levelUp(), 1);
+                return user;
+            }
+
+            return null;
         };
     }
 
+    private ItemWriter<? super UserSummary> userSummaryItemWriter() {
+        JdbcBatchItemWriter<UserSummary> itemWriter = new JdbcBatchItemWriterBuilder<UserSummary>()
+                .dataSource(this.dataSource)
+                .sql("update user set level = :level, updated_date = :updatedDate where id = :id")
+                .itemSqlParameterSourceProvider(user -> new MapSqlParameterSource()
+                        .addValue("level", user.getLevel().name())
+                        .addValue("updatedDate", Date.valueOf(user.getUpdatedDate()))
+                        .addValue("id", user.getId()))
+                .build();
+
+        itemWriter.afterPropertiesSet();
+        return itemWriter;
+    }
+
+    @Bean(JOB_NAME + "_userItemWriter")
+    @StepScope
+    public ItemWriter<User> userItemWriter(@Value("#{jobParameters[userWriter]}") String userWriter) {
+        return UserLevelUpJdbcItemWriter.forMode(UserWriteMode.of(userWriter), dataSource, userRepository);
+    }
+
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
         return user -> {
             if (user.availableLevelUp()) {
@@ -169,16 +313,19 @@ public class UserConfiguration {
         };
     }
 
-    private ItemReader<? extends User> itemReader() throws Exception {
+    //다음 페이지는 chunk 를 쓰는 동안 미리 조회
+    //prefetch thread 가 page 마다 EntityManager transaction 을 commit 하지 않도록 transacted(false) 로 읽고, 읽은 회원은 detach 된 채로 writer 에서 merge 한다
+    private ItemStreamReader<User> itemReader() throws Exception {
         JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
                 .queryString("select u from User u")
                 .entityManagerFactory(entityManagerFactory)
                 .pageSize(CHUNK)
+                .transacted(false)
                 .name(JOB_NAME + "_userItemReader")
                 .build();
 
         itemReader.afterPropertiesSet();
 
-        return itemReader;
+        return new PrefetchingItemStreamReader<>(itemReader, CHUNK);
     }
 }
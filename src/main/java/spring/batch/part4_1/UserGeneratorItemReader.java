@@ -0,0 +1,75 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import spring.batch.part5.Orders;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+/**
+ * 테스트용 회원을 4개 금액 구간에 나눠서 하나씩 생성한다.
+ * 목록을 메모리에 만들지 않고 index 로 회원을 만들기 때문에 재시작하면 read.count 위치부터 바로 이어서 생성한다.
+ *
+ * 저장 순서는 index 에 서로소인 stride 를 곱한 순열로 섞는다. 같은 datasetSize 면 항상 같은 순서로 생성된다.
+ */
+public class UserGeneratorItemReader extends AbstractItemCountingItemStreamItemReader<User> {
+
+    private static final int[] AMOUNTS = {1_000, 200_000, 300_000, 500_000};
+    private static final LocalDate[] CREATED_DATES = {
+            LocalDate.of(2020, 11, 1),
+            LocalDate.of(2020, 12, 2),
+            LocalDate.of(2020, 11, 3),
+            LocalDate.of(2020, 11, 4)};
+
+    private final int size;
+    private final int total;
+    private final long stride;
+
+    public UserGeneratorItemReader(int datasetSize) {
+        this.size = datasetSize / AMOUNTS.length; //4개 금액 구간에 나눠서 생성
+        this.total = size * AMOUNTS.length;
+        this.stride = stride(total);
+        setName("userGeneratorItemReader");
+        setMaxItemCount(total);
+    }
+
+    @Override
+    protected User doRead() throws Exception {
+        int index = (int) ((getCurrentItemCount() - 1) * stride % total);
+        int group = index / size;
+        int i = index % size;
+
+        return User.builder()
+                .orders(Collections.singletonList(Orders.builder()
+                        .amount(AMOUNTS[group])
+                        .createdDate(CREATED_DATES[group])
+                        .itemName("item " + i)
+                        .build()))
+                .username("test username " + i)
+                .build();
+    }
+
+    //index 로 바로 생성하므로 건너뛸 회원을 만들 필요가 없다
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {}
+
+    @Override
+    protected void doOpen() throws Exception {}
+
+    @Override
+    protected void doClose() throws Exception {}
+
+    //total 과 서로소인 값을 stride 로 쓰면 0 ~ total-1 이 한번씩만 나온다
+    private static long stride(int total) {
+        long stride = 7_919;
+        while (total > 0 && gcd(stride, total) != 1) {
+            stride++;
+        }
+
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
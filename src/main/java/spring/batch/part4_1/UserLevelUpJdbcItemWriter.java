@@ -0,0 +1,88 @@
+package spring.batch.part4_1;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 등급이 올라간 회원의 level, updated_date 만 jdbc batch update 로 반영한다.
+ * userRepository.save 처럼 merge(select + update) 하지 않으므로 chunk 당 한번의 batch 로 끝난다.
+ *
+ * groupByLevel 이면 같은 등급/날짜의 id 를 모아서 "where id in (...)" 로 등급별 update 한번씩만 실행한다.
+ *
+ * jobParameters[userWriter] 로 writer 를 고르는 job 은 forMode 로 만든다.
+ */
+public class UserLevelUpJdbcItemWriter implements ItemWriter<User> {
+
+    private static final String UPDATE_SQL = "update user set level = ?, updated_date = ? where id = ?";
+    private static final String UPDATE_IN_SQL = "update user set level = :level, updated_date = :updatedDate where id in (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean groupByLevel;
+
+    public UserLevelUpJdbcItemWriter(DataSource dataSource, boolean groupByLevel) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.groupByLevel = groupByLevel;
+    }
+
+    //JPA 는 userRepository.save 로 한건씩 merge 한다
+    public static ItemWriter<User> forMode(UserWriteMode mode, DataSource dataSource, UserRepository userRepository) {
+        switch (mode) {
+            case JDBC:
+                return new UserLevelUpJdbcItemWriter(dataSource, false);
+            case JDBC_GROUPED:
+                return new UserLevelUpJdbcItemWriter(dataSource, true);
+            default:
+                return users -> users.forEach(u -> {
+                    u.levelUp();
+                    userRepository.save(u);
+                });
+        }
+    }
+
+    @Override
+    public void write(List<? extends User> users) throws Exception {
+        users.forEach(User::levelUp);
+
+        if (groupByLevel) {
+            updateGroupByLevel(users);
+        } else {
+            update(users);
+        }
+    }
+
+    private void update(List<? extends User> users) {
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_SQL, users, users.size(), (ps, user) -> {
+            ps.setString(1, user.getLevel().name());
+            ps.setDate(2, Date.valueOf(user.getUpdatedDate()));
+            ps.setLong(3, user.getId());
+        });
+    }
+
+    private void updateGroupByLevel(List<? extends User> users) {
+        //여러 thread 가 동시에 update 해도 row lock 을 같은 순서로 잡도록 등급, id 순서로 정렬
+        Map<Level, Map<LocalDate, List<Long>>> ids = new EnumMap<>(Level.class);
+        for (User user : users) {
+            ids.computeIfAbsent(user.getLevel(), level -> new TreeMap<>())
+                    .computeIfAbsent(user.getUpdatedDate(), date -> new ArrayList<>())
+                    .add(user.getId());
+        }
+        ids.values().forEach(idsByDate -> idsByDate.values().forEach(Collections::sort));
+
+        ids.forEach((level, idsByDate) -> idsByDate.forEach((updatedDate, userIds) ->
+                jdbcTemplate.update(UPDATE_IN_SQL, new MapSqlParameterSource()
+                        .addValue("level", level.name())
+                        .addValue("updatedDate", Date.valueOf(updatedDate))
+                        .addValue("ids", userIds))));
+    }
+}
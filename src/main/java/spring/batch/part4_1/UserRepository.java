@@ -1,7 +1,9 @@
 package spring.batch.part4_1;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
 import java.util.Collection;
@@ -14,4 +16,11 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query(value = "select max(u.id) from User u")
     long findMaxId();
+
+    //orders 를 다시 집계해서 total_amount 를 맞춘다
+    @Modifying
+    @Query(value = "update user u set total_amount = " +
+            "(select coalesce(sum(o.amount), 0) from orders o where o.user_id = u.id) " +
+            "where u.id between :minId and :maxId", nativeQuery = true)
+    int updateTotalAmount(@Param("minId") long minId, @Param("maxId") long maxId);
 }
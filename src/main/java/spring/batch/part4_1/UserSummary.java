@@ -0,0 +1,38 @@
+package spring.batch.part4_1;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * 등급 업데이트에 필요한 회원 정보만 담는다. entity 가 아니므로 영속성 컨텍스트에 올라가지 않는다.
+ */
+@Getter
+public class UserSummary {
+
+    private final Long id;
+
+    private Level level;
+
+    private final long totalAmount;
+
+    private LocalDate updatedDate;
+
+    public UserSummary(Long id, Level level, long totalAmount) {
+        this.id = id;
+        this.level = level;
+        this.totalAmount = totalAmount;
+    }
+
+    public boolean availableLevelUp() {
+        return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
+    }
+
+    public Level levelUp() {
+        Level nextLevel = Level.getNextLevel(this.getTotalAmount());
+        this.level = nextLevel;
+        this.updatedDate = LocalDate.now();
+
+        return nextLevel;
+    }
+}
@@ -0,0 +1,20 @@
+package spring.batch.part4_1;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * 등급 업데이트 writer 방식. jobParameters[userWriter] 로 선택한다. (jpa, jdbc, jdbc-grouped)
+ */
+public enum UserWriteMode {
+    JPA,
+    JDBC,
+    JDBC_GROUPED;
+
+    public static UserWriteMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return JPA;
+        }
+
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,128 @@
+package spring.batch.part5;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chunk 하나의 transaction 시간이 targetMillis 에 가까워지도록 commit interval 을 minSize ~ maxSize 사이에서 조절한다.
+ * chunk 가 끝날 때마다 (읽은 건수 / 걸린 시간) 으로 targetMillis 동안 처리할 수 있는 건수를 구해서 현재 크기와의 중간값으로 바꾸고,
+ * rollback 되면 절반으로 줄인다.
+ *
+ * 정한 크기는 step ExecutionContext 의 adaptiveChunk.* 와 spring.batch.chunk.size metric 에 남기고, 재시작하면 마지막 크기부터 시작한다.
+ * step 에 listener 로 같이 등록해야 하고, chunk 를 하나씩 처리하는 step 에만 사용한다.
+ */
+@Slf4j
+public class AdaptiveCompletionPolicy extends SimpleCompletionPolicy implements ChunkListener, StepExecutionListener {
+
+    public static final String CHUNK_SIZE = "adaptiveChunk.size";
+    public static final String SMALLEST_CHUNK_SIZE = "adaptiveChunk.smallest";
+    public static final String LARGEST_CHUNK_SIZE = "adaptiveChunk.largest";
+    public static final String ROLLBACKS = "adaptiveChunk.rollbacks";
+
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetMillis;
+
+    private String stepName;
+    private long chunkStartNanos;
+    private int chunkItems;
+    private int smallest;
+    private int largest;
+    private int rollbacks;
+
+    public AdaptiveCompletionPolicy(int initialSize, int minSize, int maxSize, long targetMillis) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.initialSize = clamp(initialSize);
+        this.targetMillis = Math.max(1, targetMillis);
+        setChunkSize(this.initialSize);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        stepName = stepExecution.getStepName();
+        rollbacks = executionContext.getInt(ROLLBACKS, 0);
+        setChunkSize(clamp(executionContext.getInt(CHUNK_SIZE, initialSize)));
+        smallest = executionContext.getInt(SMALLEST_CHUNK_SIZE, getChunkSize());
+        largest = executionContext.getInt(LARGEST_CHUNK_SIZE, getChunkSize());
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        log.info("{} chunk size {} ~ {}, 마지막 {}, rollback {}", stepName, smallest, largest, getChunkSize(), rollbacks);
+        return null;
+    }
+
+    @Override
+    public RepeatContext start(RepeatContext context) {
+        chunkItems = 0;
+        return super.start(context);
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        super.update(context);
+        chunkItems++;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunkStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        if (chunkItems == 0) {
+            return;
+        }
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chunkStartNanos));
+        long targetSize = chunkItems * targetMillis / elapsedMillis;
+
+        //한번에 크게 바뀌지 않도록 현재 크기와의 중간값 사용
+        resize(context, (int) Math.min(Integer.MAX_VALUE, (getChunkSize() + targetSize) / 2));
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        rollbacks++;
+        resize(context, getChunkSize() / 2);
+    }
+
+    private void resize(ChunkContext context, int size) {
+        int chunkSize = clamp(size);
+        setChunkSize(chunkSize);
+        smallest = Math.min(smallest, chunkSize);
+        largest = Math.max(largest, chunkSize);
+
+        ExecutionContext executionContext = context.getStepContext().getStepExecution().getExecutionContext();
+        executionContext.putInt(CHUNK_SIZE, chunkSize);
+        executionContext.putInt(SMALLEST_CHUNK_SIZE, smallest);
+        executionContext.putInt(LARGEST_CHUNK_SIZE, largest);
+        executionContext.putInt(ROLLBACKS, rollbacks);
+
+        DistributionSummary.builder("spring.batch.chunk.size")
+                .description("adaptive commit interval")
+                .tag("step", stepName)
+                .register(Metrics.globalRegistry)
+                .record(chunkSize);
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+}
@@ -0,0 +1,84 @@
+package spring.batch.part5;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * csv 파일 하나를 gridSize 개의 byte 구간으로 나눈다. 구간 경계는 다음 줄의 시작으로 맞추므로 한 줄이 두 partition 에 나뉘지 않는다.
+ * 머리글처럼 건너뛸 줄(linesToSkip)은 첫 구간의 시작 위치를 그 다음 줄로 옮겨서 제외한다.
+ * ExecutionContext 의 startOffset, endOffset 을 MappedCsvItemReader 에 넘기면 partition 마다 자기 구간만 읽는다.
+ */
+public class CsvByteRangePartitioner implements Partitioner {
+
+    public static final String START_OFFSET = "startOffset";
+    public static final String END_OFFSET = "endOffset";
+
+    private final Resource resource;
+    private final int linesToSkip;
+
+    public CsvByteRangePartitioner(Resource resource, int linesToSkip) {
+        this.resource = resource;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long start = 0;
+            for (int i = 0; i < linesToSkip; i++) {
+                start = nextLineStart(channel, start, size);
+            }
+
+            long rangeSize = Math.max(1, (size - start + gridSize - 1) / gridSize);
+            int number = 0;
+            while (start < size) {
+                long end = nextLineStart(channel, Math.min(size, start + rangeSize) - 1, size);
+
+                ExecutionContext valueExecutionContext = new ExecutionContext();
+                valueExecutionContext.putLong(START_OFFSET, start);
+                valueExecutionContext.putLong(END_OFFSET, end);
+
+                result.put("partition" + number, valueExecutionContext);
+                number++;
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("csv 파일을 나누지 못했습니다 : " + resource, e);
+        }
+
+        return result;
+    }
+
+    //position 이후 처음 나오는 줄바꿈 다음 위치, 없으면 파일 끝
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+}
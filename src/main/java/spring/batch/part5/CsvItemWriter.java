@@ -0,0 +1,127 @@
+package spring.batch.part5;
+
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.core.io.Resource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * getter 람다로 필드를 바로 StringBuilder 에 붙여서 csv 를 쓰는 FlatFileItemWriter.
+ * BeanWrapperFieldExtractor + DelimitedLineAggregator 처럼 줄마다 reflection 으로 Object[] 와 String 을 만들지 않고,
+ * chunk 전체를 재사용하는 StringBuilder 하나에 쓴 후 String 하나로 넘긴다.
+ * 숫자와 날짜는 문자열로 바꾸지 않고 바로 붙이고, 출력 형식은 DelimitedLineAggregator 와 같다.
+ * 쓴 내용은 chunk transaction 이 commit 될 때 파일에 쓰이므로, rollback 된 chunk 는 파일에 남지 않는다.
+ *
+ * new CsvItemWriter<Person>().intField(Person::getId).field(Person::getName)
+ * 일별 주문 통계 csv 는 job 마다 같은 형식이므로 orderStatistics 로 만든다.
+ */
+public class CsvItemWriter<T> extends FlatFileItemWriter<T> {
+
+    public static final String ORDER_STATISTICS_HEADER = "total_amount_date";
+
+    private final List<FieldAppender<T>> fields = new ArrayList<>();
+    private final StringBuilder buffer = new StringBuilder();
+    private String delimiter = ",";
+
+    public CsvItemWriter() {
+        setLineAggregator(item -> {
+            StringBuilder line = new StringBuilder();
+            appendLine(line, item);
+            return line.toString();
+        });
+    }
+
+    //일별 주문 금액, 날짜를 머리글과 함께 UTF-8 로 쓴다
+    public static CsvItemWriter<OrderStatistics> orderStatistics(Resource resource, String name) throws Exception {
+        return orderStatistics(resource, name, ORDER_STATISTICS_HEADER);
+    }
+
+    //header 가 null 이면 머리글을 쓰지 않는다 (나중에 합칠 part 파일)
+    public static CsvItemWriter<OrderStatistics> orderStatistics(Resource resource, String name, String header) throws Exception {
+        CsvItemWriter<OrderStatistics> itemWriter = new CsvItemWriter<OrderStatistics>()
+                .field(OrderStatistics::getAmount)
+                .dateField(OrderStatistics::getDate);
+        itemWriter.setResource(resource);
+        itemWriter.setName(name);
+        itemWriter.setEncoding("UTF-8");
+        if (header != null) {
+            itemWriter.setHeaderCallback(writer -> writer.write(header));
+        }
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
+    public CsvItemWriter<T> delimiter(String delimiter) {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    public CsvItemWriter<T> field(Function<? super T, ?> getter) {
+        fields.add((line, item) -> line.append(getter.apply(item)));
+        return this;
+    }
+
+    public CsvItemWriter<T> intField(ToIntFunction<? super T> getter) {
+        fields.add((line, item) -> line.append(getter.applyAsInt(item)));
+        return this;
+    }
+
+    public CsvItemWriter<T> longField(ToLongFunction<? super T> getter) {
+        fields.add((line, item) -> line.append(getter.applyAsLong(item)));
+        return this;
+    }
+
+    //LocalDate.toString 과 같은 yyyy-MM-dd
+    public CsvItemWriter<T> dateField(Function<? super T, LocalDate> getter) {
+        fields.add((line, item) -> {
+            LocalDate date = getter.apply(item);
+            if (date == null) {
+                line.append((Object) null);
+                return;
+            }
+
+            line.append(date.getYear()).append('-');
+            appendTwoDigits(line, date.getMonthValue()).append('-');
+            appendTwoDigits(line, date.getDayOfMonth());
+        });
+        return this;
+    }
+
+    @Override
+    public String doWrite(List<? extends T> items) {
+        buffer.setLength(0);
+        for (T item : items) {
+            appendLine(buffer, item);
+            buffer.append(this.lineSeparator);
+        }
+
+        return buffer.toString();
+    }
+
+    private void appendLine(StringBuilder line, T item) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                line.append(delimiter);
+            }
+            fields.get(i).append(line, item);
+        }
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        if (value < 10) {
+            line.append('0');
+        }
+        return line.append(value);
+    }
+
+    @FunctionalInterface
+    private interface FieldAppender<T> {
+        void append(StringBuilder line, T item);
+    }
+}
@@ -0,0 +1,79 @@
+package spring.batch.part5;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * 기간 내 주문을 created_date 순서로 한번만 읽으면서 일별 주문 금액 합계를 만든다.
+ * 페이지마다 group by 를 다시 실행하지 않고, 날짜가 바뀔 때마다 앞 날짜의 합계를 OrderStatistics 로 반환한다.
+ * 다음 날짜의 첫 주문 한건만 들고 있으므로 주문 건수와 상관없이 메모리 사용량이 일정하다.
+ */
+public class DailyOrderStatisticsItemReader extends AbstractItemCountingItemStreamItemReader<OrderStatistics> {
+
+    private static final String SQL = "select created_date, amount from orders " +
+            "where created_date >= ? and created_date <= ? order by created_date";
+
+    private final JdbcCursorItemReader<Orders> delegate;
+
+    //다음 날짜의 첫 주문
+    private Orders next;
+
+    public DailyOrderStatisticsItemReader(DataSource dataSource, LocalDate startDate, LocalDate endDate, int fetchSize) {
+        this.delegate = new JdbcCursorItemReaderBuilder<Orders>()
+                .dataSource(dataSource)
+                .sql(SQL)
+                .preparedStatementSetter(ps -> {
+                    ps.setDate(1, Date.valueOf(startDate));
+                    ps.setDate(2, Date.valueOf(endDate));
+                })
+                .rowMapper((resultSet, i) -> Orders.builder()
+                        .createdDate(resultSet.getDate(1).toLocalDate())
+                        .amount(resultSet.getInt(2))
+                        .build())
+                .fetchSize(fetchSize)
+                .saveState(false)
+                .name("dailyOrderStatisticsDelegate")
+                .build();
+    }
+
+    @Override
+    protected OrderStatistics doRead() throws Exception {
+        if (next == null) {
+            next = delegate.read();
+        }
+
+        if (next == null) {
+            return null;
+        }
+
+        LocalDate date = next.getCreatedDate();
+        long amount = 0;
+        while (next != null && next.getCreatedDate().equals(date)) {
+            amount += next.getAmount();
+            next = delegate.read();
+        }
+
+        return OrderStatistics.builder()
+                .amount(String.valueOf(amount))
+                .date(date)
+                .build();
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        next = null;
+        delegate.open(new ExecutionContext());
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        next = null;
+        delegate.close();
+    }
+}
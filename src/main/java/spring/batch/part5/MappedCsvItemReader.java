@@ -0,0 +1,296 @@
+package spring.batch.part5;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 파일을 FileChannel 로 memory-map 해서 구분자를 byte 단위로 찾고, 필드를 바로 객체로 만드는 csv reader.
+ * FlatFileItemReader + DefaultLineMapper 처럼 줄마다 String, String[], FieldSet 을 만들지 않고,
+ * 재사용하는 byte 배열에 한줄을 복사한 후 필요한 필드만 String, int 로 바꾼다.
+ *
+ * 재시작은 읽은 건수만큼 다시 읽지 않고 ExecutionContext 에 저장한 byte offset 으로 바로 이동한다.
+ * 2GB 보다 큰 파일도 읽을 수 있도록 windowSize 단위로 나눠서 map 한다.
+ * startOffset, endOffset 을 지정하면 startOffset 부터 endOffset 전에 시작하는 줄까지만 읽으므로 파일 하나를 여러 partition 이 나눠 읽을 수 있다.
+ * 따옴표로 감싼 필드는 처리하지 않고, 빈 줄은 건너뛴다.
+ *
+ * new MappedCsvItemReader<>(resource, 4, record -> new Person(record.readInt(0), record.readString(1), ...))
+ */
+public class MappedCsvItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+
+    private static final String OFFSET = "offset";
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Resource resource;
+    private final int columns;
+    private final CsvRecordMapper<T> mapper;
+    private final CsvRecord record;
+
+    private byte delimiter = ',';
+    private int linesToSkip = 0;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private long startOffset = 0;
+    private long endOffset = Long.MAX_VALUE;
+
+    private FileChannel channel;
+    private long size;
+    //endOffset 과 파일 크기 중 작은 값
+    private long limit;
+    private MappedByteBuffer window;
+    private long windowStart;
+    //다음에 읽을 줄의 시작 위치
+    private long position;
+    //재시작할 때 이동할 위치, 없으면 -1
+    private long restartOffset = -1;
+
+    public MappedCsvItemReader(Resource resource, int columns, CsvRecordMapper<T> mapper) {
+        this(resource, columns, mapper, StandardCharsets.UTF_8);
+    }
+
+    public MappedCsvItemReader(Resource resource, int columns, CsvRecordMapper<T> mapper, Charset charset) {
+        this.resource = resource;
+        this.columns = columns;
+        this.mapper = mapper;
+        this.record = new CsvRecord(charset);
+    }
+
+    public void setDelimiter(char delimiter) {
+        this.delimiter = (byte) delimiter;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    //줄의 시작 위치여야 한다
+    public void setStartOffset(long startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    //이 위치 전에 시작하는 줄까지 읽는다
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        while (position < limit) {
+            if (nextLine() > 0) {
+                record.tokenize(delimiter);
+                if (columns > 0 && record.count != columns) {
+                    throw new IncorrectTokenCountException(columns, record.count, record.toString());
+                }
+
+                return mapper.map(record);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        if (!resource.exists()) {
+            throw new IllegalStateException("Input resource must exist: " + resource);
+        }
+
+        channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+        size = channel.size();
+        limit = Math.min(endOffset, size);
+        window = null;
+        position = startOffset;
+        for (int i = 0; i < linesToSkip && position < limit; i++) {
+            nextLine();
+        }
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        window = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        String key = getExecutionContextKey(OFFSET);
+        restartOffset = executionContext.containsKey(key) ? executionContext.getLong(key) : -1;
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(OFFSET), position);
+        }
+    }
+
+    //읽은 건수만큼 다시 읽지 않고 저장한 offset 으로 이동
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartOffset < 0) {
+            super.jumpToItem(itemIndex);
+            return;
+        }
+
+        position = restartOffset;
+    }
+
+    //position 부터 한줄을 record 에 복사하고 줄바꿈 다음으로 이동한다. 줄바꿈을 제외한 길이를 반환
+    private int nextLine() throws IOException {
+        record.length = 0;
+        while (position < size) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                map(position);
+            }
+
+            byte b = window.get((int) (position - windowStart));
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            record.append(b);
+        }
+
+        if (record.length > 0 && record.line[record.length - 1] == '\r') {
+            record.length--;
+        }
+
+        return record.length;
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    @FunctionalInterface
+    public interface CsvRecordMapper<T> {
+        T map(CsvRecord record) throws Exception;
+    }
+
+    /**
+     * 한줄의 byte 와 필드 위치. 다음 줄을 읽으면 내용이 바뀌므로 map 안에서만 사용한다.
+     */
+    public static class CsvRecord {
+
+        private final Charset charset;
+        private byte[] line = new byte[256];
+        private int length;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int count;
+
+        private CsvRecord(Charset charset) {
+            this.charset = charset;
+        }
+
+        public int getFieldCount() {
+            return count;
+        }
+
+        //FieldSet.readString 처럼 앞뒤 공백은 제외
+        public String readString(int index) {
+            checkIndex(index);
+            int start = starts[index];
+            int end = ends[index];
+            while (start < end && line[start] <= ' ' && line[start] >= 0) {
+                start++;
+            }
+            while (end > start && line[end - 1] <= ' ' && line[end - 1] >= 0) {
+                end--;
+            }
+            return new String(line, start, end - start, charset);
+        }
+
+        public int readInt(int index) {
+            long value = readLong(index);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Unparseable int: " + readString(index));
+            }
+            return (int) value;
+        }
+
+        //FieldSet.readLong 처럼 앞뒤 공백은 무시
+        public long readLong(int index) {
+            checkIndex(index);
+            int start = starts[index];
+            int end = ends[index];
+            while (start < end && line[start] == ' ') {
+                start++;
+            }
+            while (end > start && line[end - 1] == ' ') {
+                end--;
+            }
+
+            boolean negative = start < end && line[start] == '-';
+            int i = negative ? start + 1 : start;
+            if (i == end || end - i > 18) {
+                return Long.parseLong(readString(index).trim());
+            }
+
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = line[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("Unparseable number: " + readString(index));
+                }
+                value = value * 10 + digit;
+            }
+
+            return negative ? -value : value;
+        }
+
+        @Override
+        public String toString() {
+            return new String(line, 0, length, charset);
+        }
+
+        private void append(byte b) {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = b;
+        }
+
+        private void tokenize(byte delimiter) {
+            count = 0;
+            int start = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i == length || line[i] == delimiter) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                    }
+                    starts[count] = start;
+                    ends[count] = i;
+                    count++;
+                    start = i + 1;
+                }
+            }
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("There is no field at index " + index + " in: " + this);
+            }
+        }
+    }
+}
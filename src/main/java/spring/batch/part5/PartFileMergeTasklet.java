@@ -0,0 +1,118 @@
+package spring.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * partition 마다 따로 쓴 part 파일들을 파일 이름 순서대로 이어 붙여서 파일 하나로 만든다.
+ * 머리글과 바닥글은 part 파일에는 쓰지 않고 여기서 한번씩만 쓰며, part 내용은 FileChannel.transferTo 로 복사하므로 heap 을 거치지 않는다.
+ * 임시 파일에 다 쓴 후 이동하므로 target 이 반쯤 쓰인 채로 남지 않고, 이동한 후 part 파일과 디렉토리를 지운다.
+ * part 파일을 지운 후 step 결과를 저장하기 전에 실패하면 재시작할 때 part 파일이 없으므로, part 파일이 없고 target 이 있으면 이미 합친 것으로 보고 건너뛴다.
+ */
+@Slf4j
+public class PartFileMergeTasklet implements Tasklet {
+
+    public static final String PART_SUFFIX = ".part";
+
+    private final Path partDirectory;
+    private final Path target;
+    private final String header;
+    private final String footer;
+    private final Charset charset;
+    private final String lineSeparator = System.getProperty("line.separator");
+
+    public PartFileMergeTasklet(Path partDirectory, Path target, String header, String footer, Charset charset) {
+        this.partDirectory = partDirectory;
+        this.target = target;
+        this.header = header;
+        this.footer = footer;
+        this.charset = charset;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        List<Path> parts = parts();
+        if (parts.isEmpty() && Files.exists(target)) {
+            log.info("part 파일이 없고 {} 이 있으므로 이미 합친 것으로 보고 건너뜁니다", target);
+            Files.deleteIfExists(partDirectory);
+            return RepeatStatus.FINISHED;
+        }
+
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+
+        long bytes;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (header != null) {
+                write(out, header + lineSeparator);
+            }
+            for (Path part : parts) {
+                transfer(part, out);
+            }
+            if (footer != null) {
+                write(out, footer + lineSeparator);
+            }
+            bytes = out.size();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path part : parts) {
+            Files.delete(part);
+        }
+        Files.deleteIfExists(partDirectory);
+
+        log.info("part 파일 {} 개를 {} 로 합쳤습니다 ({} bytes)", parts.size(), target, bytes);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    //part 파일 이름 순서가 partition 순서이다
+    private List<Path> parts() throws IOException {
+        if (!Files.isDirectory(partDirectory)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(partDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(PART_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void write(FileChannel out, String text) throws IOException {
+        ByteBuffer buffer = charset.encode(text);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void transfer(Path part, FileChannel out) throws IOException {
+        try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package spring.batch.part5;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * delegate 를 별도 thread 에서 미리 읽어서 bufferSize 개까지 쌓아두는 reader.
+ * step thread 가 chunk 를 process, write 하는 동안 다음 페이지를 조회하므로 읽기와 쓰기 대기 시간이 겹친다.
+ *
+ * delegate 는 미리 읽은 위치까지 가 있으므로 delegate 의 상태 대신 step 이 실제로 가져간 item 수를
+ * delegate 의 "{name}.read.count" 로 저장한다. 재시작하면 delegate 가 그 수만큼 건너뛰고 다시 읽는다.
+ * JpaPagingItemReader, JdbcPagingItemReader, FlatFileItemReader 처럼 read.count 로 재시작하는 reader 에 사용하고,
+ * step thread 하나에서만 읽는다.
+ *
+ * delegate 는 chunk transaction 밖의 prefetch thread 에서 읽으므로 writer 와 EntityManager, connection 같은 상태를 공유하면 안된다.
+ * JpaPagingItemReader 는 transacted(false) 로 만들어서 page 를 읽을 때 자기 transaction 을 commit 하지 않게 한다.
+ */
+public class PrefetchingItemStreamReader<T> implements ItemStreamReader<T> {
+
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final AbstractItemCountingItemStreamItemReader<T> delegate;
+    private final BlockingQueue<Object> buffer;
+    private final String readCountKey;
+
+    private Thread prefetchThread;
+    private volatile boolean running;
+    private volatile Throwable failure;
+    private boolean finished;
+    private int readCount;
+
+    public PrefetchingItemStreamReader(AbstractItemCountingItemStreamItemReader<T> delegate, int bufferSize) {
+        this.delegate = delegate;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.readCountKey = delegate.getExecutionContextKey("read.count");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.open(executionContext);
+
+        readCount = executionContext.getInt(readCountKey, 0);
+        finished = false;
+        failure = null;
+        buffer.clear();
+
+        running = true;
+        prefetchThread = new Thread(this::prefetch, readCountKey + "-prefetch");
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read() throws Exception {
+        if (finished) {
+            return null;
+        }
+
+        Object item = buffer.take();
+        if (item == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure instanceof Exception ? (Exception) failure : new ItemStreamException(failure);
+            }
+            return null;
+        }
+
+        readCount++;
+        return (T) item;
+    }
+
+    //delegate.update 는 미리 읽은 위치를 저장하므로 호출하지 않는다
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putInt(readCountKey, readCount);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        running = false;
+        if (prefetchThread != null) {
+            buffer.clear();
+            try {
+                prefetchThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            prefetchThread = null;
+        }
+
+        buffer.clear();
+        delegate.close();
+    }
+
+    private void prefetch() {
+        try {
+            T item;
+            while (running && (item = delegate.read()) != null) {
+                put(item);
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        put(END);
+    }
+
+    //close 되면 buffer 가 차 있어도 기다리지 않고 끝낸다
+    private void put(Object item) {
+        try {
+            boolean offered = false;
+            while (running && !offered) {
+                offered = buffer.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
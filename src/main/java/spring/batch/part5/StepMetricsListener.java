@@ -0,0 +1,250 @@
+package spring.batch.part5;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterChunkError;
+import org.springframework.batch.core.annotation.AfterProcess;
+import org.springframework.batch.core.annotation.AfterRead;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.AfterWrite;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeProcess;
+import org.springframework.batch.core.annotation.BeforeRead;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.BeforeWrite;
+import org.springframework.batch.core.annotation.OnProcessError;
+import org.springframework.batch.core.annotation.OnReadError;
+import org.springframework.batch.core.annotation.OnSkipInProcess;
+import org.springframework.batch.core.annotation.OnSkipInRead;
+import org.springframework.batch.core.annotation.OnSkipInWrite;
+import org.springframework.batch.core.annotation.OnWriteError;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.listener.RetryListenerSupport;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * step 의 read, process, write, chunk 시간과 skip, retry, 오류 건수를 Micrometer 전역 registry 에 기록한다.
+ * 모든 meter 에 job, step, partition tag 를 붙이고, partition 이 아닌 step 은 partition=none 으로 기록한다.
+ *
+ * annotation listener 이므로 .listener(new StepMetricsListener()) 로 등록하고, retry 는 faultTolerant() step 에 retryListener() 를 따로 등록한다.
+ * 여러 thread, 여러 partition 이 같은 listener 를 사용해도 되도록 meter 는 StepExecution 별로, 시작 시각은 thread 별로 둔다.
+ */
+public class StepMetricsListener {
+
+    private static final String NO_PARTITION = "none";
+
+    private final MeterRegistry registry;
+    private final Map<Long, StepMeters> stepMeters = new ConcurrentHashMap<>();
+    //gauge 는 값 객체를 약하게 참조하므로 listener 가 들고 있는다
+    private final Map<Tags, AtomicLong> itemsPerSecond = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Long> readStart = new ThreadLocal<>();
+    private final ThreadLocal<Long> processStart = new ThreadLocal<>();
+    private final ThreadLocal<Long> writeStart = new ThreadLocal<>();
+    private final ThreadLocal<Long> chunkStart = new ThreadLocal<>();
+
+    public StepMetricsListener() {
+        this(Metrics.globalRegistry);
+    }
+
+    public StepMetricsListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        stepMeters.put(stepExecution.getId(), new StepMeters(registry, tags(stepExecution)));
+    }
+
+    @AfterStep
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        StepMeters meters = stepMeters.remove(stepExecution.getId());
+        if (meters != null && stepExecution.getStartTime() != null) {
+            long millis = Math.max(1, System.currentTimeMillis() - stepExecution.getStartTime().getTime());
+            itemsPerSecond.computeIfAbsent(meters.tags, tags -> registry.gauge("batch.step.items.per.second", tags, new AtomicLong()))
+                    .set(stepExecution.getWriteCount() * 1000L / millis);
+        }
+
+        return null;
+    }
+
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        chunkStart.set(System.nanoTime());
+    }
+
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        record(chunkStart, meters -> meters.chunk);
+    }
+
+    @AfterChunkError
+    public void afterChunkError(ChunkContext context) {
+        record(chunkStart, meters -> meters.chunkError);
+    }
+
+    @BeforeRead
+    public void beforeRead() {
+        readStart.set(System.nanoTime());
+    }
+
+    @AfterRead
+    public void afterRead(Object item) {
+        record(readStart, meters -> meters.read);
+    }
+
+    @OnReadError
+    public void onReadError(Exception e) {
+        readStart.remove();
+        count(meters -> meters.readError);
+    }
+
+    @BeforeProcess
+    public void beforeProcess(Object item) {
+        processStart.set(System.nanoTime());
+    }
+
+    @AfterProcess
+    public void afterProcess(Object item, Object result) {
+        record(processStart, meters -> meters.process);
+    }
+
+    @OnProcessError
+    public void onProcessError(Object item, Exception e) {
+        processStart.remove();
+        count(meters -> meters.processError);
+    }
+
+    @BeforeWrite
+    public void beforeWrite(List<?> items) {
+        writeStart.set(System.nanoTime());
+    }
+
+    @AfterWrite
+    public void afterWrite(List<?> items) {
+        record(writeStart, meters -> meters.write);
+        count(meters -> meters.written, items.size());
+    }
+
+    @OnWriteError
+    public void onWriteError(Exception e, List<?> items) {
+        writeStart.remove();
+        count(meters -> meters.writeError);
+    }
+
+    @OnSkipInRead
+    public void onSkipInRead(Throwable t) {
+        count(meters -> meters.skipInRead);
+    }
+
+    @OnSkipInProcess
+    public void onSkipInProcess(Object item, Throwable t) {
+        count(meters -> meters.skipInProcess);
+    }
+
+    @OnSkipInWrite
+    public void onSkipInWrite(Object item, Throwable t) {
+        count(meters -> meters.skipInWrite);
+    }
+
+    //retry 할 때마다(실패한 시도마다) batch.item.retry 를 증가
+    public RetryListenerSupport retryListener() {
+        return new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                count(meters -> meters.retry);
+            }
+        };
+    }
+
+    private void record(ThreadLocal<Long> start, Function<StepMeters, Timer> timer) {
+        Long startNanos = start.get();
+        start.remove();
+
+        StepMeters meters = currentMeters();
+        if (startNanos != null && meters != null) {
+            timer.apply(meters).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void count(Function<StepMeters, Counter> counter) {
+        count(counter, 1);
+    }
+
+    private void count(Function<StepMeters, Counter> counter, int amount) {
+        StepMeters meters = currentMeters();
+        if (meters != null) {
+            counter.apply(meters).increment(amount);
+        }
+    }
+
+    private StepMeters currentMeters() {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context == null) {
+            return null;
+        }
+
+        return stepMeters.get(context.getStepExecution().getId());
+    }
+
+    //partition step 이름은 "{step}:{partition}"
+    private static Tags tags(StepExecution stepExecution) {
+        String stepName = stepExecution.getStepName();
+        int separator = stepName.indexOf(':');
+
+        return Tags.of(
+                "job", stepExecution.getJobExecution().getJobInstance().getJobName(),
+                "step", separator < 0 ? stepName : stepName.substring(0, separator),
+                "partition", separator < 0 ? NO_PARTITION : stepName.substring(separator + 1));
+    }
+
+    private static class StepMeters {
+        private final Tags tags;
+        private final Timer read;
+        private final Timer process;
+        private final Timer write;
+        private final Timer chunk;
+        private final Timer chunkError;
+        private final Counter written;
+        private final Counter readError;
+        private final Counter processError;
+        private final Counter writeError;
+        private final Counter skipInRead;
+        private final Counter skipInProcess;
+        private final Counter skipInWrite;
+        private final Counter retry;
+
+        private StepMeters(MeterRegistry registry, Tags tags) {
+            this.tags = tags;
+            this.read = registry.timer("batch.item.read", tags);
+            this.process = registry.timer("batch.item.process", tags);
+            this.write = registry.timer("batch.chunk.write", tags);
+            this.chunk = registry.timer("batch.chunk", tags.and("status", "success"));
+            this.chunkError = registry.timer("batch.chunk", tags.and("status", "failure"));
+            this.written = registry.counter("batch.item.written", tags);
+            this.readError = registry.counter("batch.item.error", tags.and("phase", "read"));
+            this.processError = registry.counter("batch.item.error", tags.and("phase", "process"));
+            this.writeError = registry.counter("batch.item.error", tags.and("phase", "write"));
+            this.skipInRead = registry.counter("batch.item.skip", tags.and("phase", "read"));
+            this.skipInProcess = registry.counter("batch.item.skip", tags.and("phase", "process"));
+            this.skipInWrite = registry.counter("batch.item.skip", tags.and("phase", "write"));
+            this.retry = registry.counter("batch.item.retry", tags);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package spring.batch.part5;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * 공유 TaskExecutor 에 동시에 실행되는 작업 수를 concurrencyLimit 개로 제한한다.
+ * 자리가 없으면 execute 를 호출한 thread 가 앞 작업이 끝날 때까지 기다린다.
+ */
+public class ThrottledTaskExecutor implements TaskExecutor {
+
+    private final TaskExecutor delegate;
+    private final Semaphore semaphore;
+
+    public ThrottledTaskExecutor(TaskExecutor delegate, int concurrencyLimit) {
+        this.delegate = delegate;
+        this.semaphore = new Semaphore(Math.max(1, concurrencyLimit));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TaskRejectedException("작업 실행 대기 중 interrupt 되었습니다", e);
+        }
+
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package spring.batch.part5;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * date 구간("2020-01..2020-12")을 월 단위로 나눈다. 단일 월("2020-11")이면 partition 하나만 만든다.
+ * 같은 구간이면 항상 같은 partition 이름이 나오므로 재시작하면 완료되지 않은 월만 다시 실행된다.
+ */
+public class YearMonthPartitioner implements Partitioner {
+
+    private static final String RANGE_DELIMITER = "..";
+
+    private final YearMonth startMonth;
+    private final YearMonth endMonth;
+
+    public YearMonthPartitioner(String date) {
+        int index = date.indexOf(RANGE_DELIMITER);
+
+        if (index < 0) {
+            this.startMonth = YearMonth.parse(date.trim());
+            this.endMonth = startMonth;
+        } else {
+            this.startMonth = YearMonth.parse(date.substring(0, index).trim());
+            this.endMonth = YearMonth.parse(date.substring(index + RANGE_DELIMITER.length()).trim());
+        }
+
+        if (endMonth.isBefore(startMonth)) {
+            throw new IllegalArgumentException("date 구간의 시작 월이 종료 월보다 늦습니다 : " + date);
+        }
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        int number = 0;
+        for (YearMonth month = startMonth; !month.isAfter(endMonth); month = month.plusMonths(1)) {
+            ExecutionContext valueExecutionContext = new ExecutionContext();
+            valueExecutionContext.putString("date", month.toString());
+
+            result.put("partition" + number, valueExecutionContext);
+            number++;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package spring.batch.part6;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * cpu 수, connection pool 크기, jobParameters[concurrency] 로 동시에 실행할 thread 수를 정한다.
+ * worker thread 는 chunk transaction 동안 connection 을 하나씩 잡고 있으므로 pool 보다 많이 띄우면 connection 을 기다리며 멈춘다.
+ * job repository 갱신에 쓸 connection 하나는 남겨둔다.
+ * virtual thread 를 쓰면 (batch.task-executor=virtual) thread 는 기다려도 비용이 거의 없으므로 pool 크기로 제한하지 않고,
+ * 동시에 DB 작업을 하는 thread 수는 ConnectionLimitingDataSource 의 semaphore 가 maxConcurrency 개로 제한한다.
+ */
+@Slf4j
+@Component
+public class ConcurrencySizing {
+
+    public static final String CONCURRENCY = "concurrency";
+
+    private static final int RESERVED_CONNECTIONS = 1;
+    //maximum-pool-size 를 지정하지 않으면 Hikari 는 pool 이 시작될 때 이 값으로 정한다
+    private static final int HIKARI_DEFAULT_POOL_SIZE = 10;
+
+    private final int processors;
+    private final int maxConcurrency;
+    private final boolean virtual;
+
+    public ConcurrencySizing(DataSource dataSource, @Value("${batch.task-executor:platform}") String taskExecutorMode) {
+        int poolSize = poolSize(dataSource);
+
+        this.processors = Runtime.getRuntime().availableProcessors();
+        this.maxConcurrency = maxConcurrency(dataSource);
+        this.virtual = TaskExecutorMode.of(taskExecutorMode) == TaskExecutorMode.VIRTUAL;
+        log.info("processors {}, connection pool {}, max concurrency {}, virtual {}", processors, poolSize, maxConcurrency, virtual);
+    }
+
+    //TaskExecutor 가 띄울 수 있는 최대 thread 수
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    //job 이 사용할 thread 수 (grid size, throttle limit). 값이 없으면 cpu 수만큼 사용하고, virtual thread 는 maxConcurrency 보다 크게 지정할 수 있다
+    public int getConcurrency(String concurrency) {
+        if (StringUtils.isEmpty(concurrency)) {
+            return Math.min(processors, maxConcurrency);
+        }
+
+        int requested = Math.max(1, Integer.parseInt(concurrency.trim()));
+        return virtual ? requested : Math.min(requested, maxConcurrency);
+    }
+
+    public int getConcurrency(JobParameters jobParameters) {
+        return getConcurrency(jobParameters.getString(CONCURRENCY));
+    }
+
+    //pool 크기를 알 수 없으면 cpu 수
+    public static int maxConcurrency(DataSource dataSource) {
+        int poolSize = poolSize(dataSource);
+        return poolSize > 0 ? Math.max(1, poolSize - RESERVED_CONNECTIONS) : Runtime.getRuntime().availableProcessors();
+    }
+
+    //pool 크기를 알 수 없으면 0
+    private static int poolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                //pool 이 시작되기 전에는 -1 이다
+                int maximumPoolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+                return maximumPoolSize > 0 ? maximumPoolSize : HIKARI_DEFAULT_POOL_SIZE;
+            }
+        } catch (SQLException e) {
+            log.warn("connection pool 크기를 확인할 수 없습니다", e);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,144 @@
+package spring.batch.part6;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 동시에 DB 작업을 하는 thread 수를 connectionLimit 개로 제한하는 DataSource.
+ * getConnection 에서 permit 을 얻고 connection 을 close 할 때 돌려주므로, 자리가 없으면 connection pool 의 timeout 없이 permit 을 기다린다.
+ * virtual thread 수백개가 partition 을 실행해도 pool 에서 connectionTimeout 으로 실패하지 않고 차례를 기다린다.
+ *
+ * chunk transaction 과 paging reader 처럼 한 thread 가 connection 을 여러개 여는 경우 permit 을 하나만 쓰므로,
+ * 이미 connection 을 가진 thread 가 다른 thread 의 close 를 기다리며 멈추지 않는다.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource {
+
+    private final Semaphore semaphore;
+    //thread 가 열어둔 connection 수. 0 에서 1 이 될 때 permit 을 얻고, 다시 0 이 되면 돌려준다
+    private final ThreadLocal<AtomicInteger> openConnections = ThreadLocal.withInitial(AtomicInteger::new);
+
+    public ConnectionLimitingDataSource(DataSource targetDataSource, int connectionLimit) {
+        super(targetDataSource);
+        this.semaphore = new Semaphore(Math.max(1, connectionLimit), true);
+    }
+
+    public int getAvailablePermits() {
+        return semaphore.availablePermits();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        AtomicInteger counter = acquire();
+        try {
+            return proxy(super.getConnection(), counter);
+        } catch (SQLException | RuntimeException e) {
+            release(counter);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        AtomicInteger counter = acquire();
+        try {
+            return proxy(super.getConnection(username, password), counter);
+        } catch (SQLException | RuntimeException e) {
+            release(counter);
+            throw e;
+        }
+    }
+
+    private AtomicInteger acquire() throws SQLException {
+        AtomicInteger counter = openConnections.get();
+        if (counter.getAndIncrement() > 0) {
+            return counter;
+        }
+
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            counter.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new SQLException("connection 대기 중 interrupt 되었습니다", e);
+        }
+        return counter;
+    }
+
+    //close 는 connection 을 연 thread 가 아닐 수도 있으므로 연 thread 의 counter 를 줄인다
+    private void release(AtomicInteger counter) {
+        if (counter.decrementAndGet() == 0) {
+            semaphore.release();
+        }
+    }
+
+    private Connection proxy(Connection target, AtomicInteger counter) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[] {ConnectionProxy.class},
+                new PermitReleasingInvocationHandler(target, counter));
+    }
+
+    private class PermitReleasingInvocationHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final AtomicInteger counter;
+        private boolean closed;
+
+        private PermitReleasingInvocationHandler(Connection target, AtomicInteger counter) {
+            this.target = target;
+            this.counter = counter;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getTargetConnection":
+                    return target;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                case "close":
+                    synchronized (this) {
+                        if (closed) {
+                            return null;
+                        }
+                        closed = true;
+                    }
+                    try {
+                        target.close();
+                    } finally {
+                        release(counter);
+                    }
+                    return null;
+                default:
+                    break;
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * batch.task-executor=virtual 이면 DataSource 를 ConnectionLimitingDataSource 로 감싼다.
+ * 작업마다 thread 를 띄우므로 작업 수 대신 DB 작업을 하는 thread 수를 ConcurrencySizing.maxConcurrency 개로 제한한다.
+ * partition manager 처럼 connection 없이 worker 를 기다리는 작업은 permit 을 잡지 않으므로 서로 기다리며 멈추지 않는다.
+ */
+@Slf4j
+@Component
+public class ConnectionLimitingDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final boolean virtual;
+
+    public ConnectionLimitingDataSourcePostProcessor(@Value("${batch.task-executor:platform}") String taskExecutorMode) {
+        this.virtual = TaskExecutorMode.of(taskExecutorMode) == TaskExecutorMode.VIRTUAL;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!virtual || !(bean instanceof DataSource) || bean instanceof ConnectionLimitingDataSource) {
+            return bean;
+        }
+
+        int connectionLimit = ConcurrencySizing.maxConcurrency((DataSource) bean);
+        log.info("{} 에서 동시에 connection 을 쓰는 thread 를 {} 개로 제한합니다", beanName, connectionLimit);
+        return new ConnectionLimitingDataSource((DataSource) bean, connectionLimit);
+    }
+}
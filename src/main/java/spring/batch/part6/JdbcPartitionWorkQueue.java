@@ -0,0 +1,121 @@
+package spring.batch.part6;
+
+import lombok.Getter;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 여러 JVM 의 worker 가 같이 사용하는 partition 작업 queue. (partition_work_queue 테이블, PartitionWorkQueueSchemaInitializer 가 partition-queue.sql 로 생성)
+ *
+ * manager 는 partition StepExecution id 를 READY 로 넣고, worker 는 READY 인 row 를 조건부 update 로 CLAIMED 로 바꿔서 가져간다.
+ * update 된 row 가 1건인 worker 만 그 partition 을 실행하므로 같은 partition 을 두 worker 가 실행하지 않는다.
+ * worker 는 실행 중에 heartbeat 를 갱신하고, heartbeat 가 오래된 CLAIMED row 는 manager 가 다시 READY 로 돌린다.
+ */
+@Component
+public class JdbcPartitionWorkQueue {
+
+    private static final String READY = "READY";
+    private static final String CLAIMED = "CLAIMED";
+    private static final String DONE = "DONE";
+
+    //한번에 claim 을 시도할 후보 수
+    private static final int CLAIM_CANDIDATES = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate candidateTemplate;
+    @Getter
+    private final long pollInterval;
+    @Getter
+    private final long heartbeatTimeout;
+    @Getter
+    private final long timeout;
+
+    public JdbcPartitionWorkQueue(DataSource dataSource,
+                                  @Value("${batch.partition-queue.poll-interval:1000}") long pollInterval,
+                                  @Value("${batch.partition-queue.heartbeat-timeout:30000}") long heartbeatTimeout,
+                                  @Value("${batch.partition-queue.timeout:3600000}") long timeout) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.candidateTemplate = new JdbcTemplate(dataSource);
+        this.candidateTemplate.setMaxRows(CLAIM_CANDIDATES);
+        this.pollInterval = pollInterval;
+        this.heartbeatTimeout = heartbeatTimeout;
+        this.timeout = timeout;
+    }
+
+    //stepName 은 worker 가 실행할 step bean 이름
+    public void enqueue(StepExecution managerStepExecution, String stepName, Collection<StepExecution> stepExecutions) {
+        List<Object[]> rows = stepExecutions.stream()
+                .map(stepExecution -> new Object[]{stepExecution.getId(), stepExecution.getJobExecutionId(),
+                        managerStepExecution.getId(), stepName, READY})
+                .collect(Collectors.toList());
+
+        jdbcTemplate.batchUpdate("insert into partition_work_queue " +
+                "(step_execution_id, job_execution_id, manager_step_execution_id, step_name, status) values (?, ?, ?, ?, ?)", rows);
+    }
+
+    //READY 인 partition 하나를 worker 이름으로 가져온다. 없으면 null
+    public PartitionWork claim(String worker) {
+        List<PartitionWork> candidates = candidateTemplate.query(
+                "select step_execution_id, job_execution_id, step_name from partition_work_queue " +
+                        "where status = ? order by step_execution_id",
+                (resultSet, i) -> new PartitionWork(resultSet.getLong(1), resultSet.getLong(2), resultSet.getString(3)),
+                READY);
+
+        for (PartitionWork work : candidates) {
+            int claimed = jdbcTemplate.update("update partition_work_queue set status = ?, worker = ?, heartbeat = current_timestamp " +
+                    "where step_execution_id = ? and status = ?", CLAIMED, worker, work.getStepExecutionId(), READY);
+
+            if (claimed == 1) {
+                return work;
+            }
+        }
+
+        return null;
+    }
+
+    public void heartbeat(String worker) {
+        jdbcTemplate.update("update partition_work_queue set heartbeat = current_timestamp where worker = ? and status = ?",
+                worker, CLAIMED);
+    }
+
+    public void complete(PartitionWork work, String worker) {
+        jdbcTemplate.update("update partition_work_queue set status = ? where step_execution_id = ? and worker = ?",
+                DONE, work.getStepExecutionId(), worker);
+    }
+
+    //heartbeat 가 heartbeatTimeout 보다 오래된 partition 을 다른 worker 가 가져갈 수 있도록 되돌린다
+    public int reclaim(StepExecution managerStepExecution) {
+        return jdbcTemplate.update("update partition_work_queue set status = ?, worker = null " +
+                        "where manager_step_execution_id = ? and status = ? and heartbeat < timestampadd(second, ?, current_timestamp)",
+                READY, managerStepExecution.getId(), CLAIMED, -heartbeatTimeout / 1000);
+    }
+
+    public int countUnfinished(StepExecution managerStepExecution) {
+        return jdbcTemplate.queryForObject("select count(*) from partition_work_queue " +
+                "where manager_step_execution_id = ? and status <> ?", Integer.class, managerStepExecution.getId(), DONE);
+    }
+
+    public void delete(StepExecution managerStepExecution) {
+        jdbcTemplate.update("delete from partition_work_queue where manager_step_execution_id = ?", managerStepExecution.getId());
+    }
+
+    @Getter
+    public static class PartitionWork {
+        private final long stepExecutionId;
+        private final long jobExecutionId;
+        private final String stepName;
+
+        public PartitionWork(long stepExecutionId, long jobExecutionId, String stepName) {
+            this.stepExecutionId = stepExecutionId;
+            this.jobExecutionId = jobExecutionId;
+            this.stepName = stepName;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import spring.batch.part6.JdbcPartitionWorkQueue.PartitionWork;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JdbcPartitionWorkQueue 에서 partition 을 가져와서 실행하는 worker. batch.partition-worker.enabled=true 일때만 동작한다.
+ *
+ * java -jar ... --batch.partition-worker.enabled=true --job.name=NONE
+ * 처럼 실행하면 job 은 실행하지 않고 종료될 때까지 queue 를 polling 한다.
+ * job 을 실행하는 JVM 에서는 worker 를 띄우지 않는다. manager 는 partition 이 모두 끝날 때까지 기다리는데,
+ * ApplicationRunner 인 worker 는 job 이 끝난 후에야 시작하므로 같은 JVM 에서는 partition 을 처리할 수 없다.
+ *
+ * 여러 JVM 이 H2 를 같이 쓰려면 file DB 를 AUTO_SERVER 모드로 열거나 (jdbc:h2:file:./db/batch;AUTO_SERVER=TRUE)
+ * H2 server 를 띄우고 tcp 로 접속한다 (jdbc:h2:tcp://localhost/./db/batch). mem DB 는 JVM 마다 따로 생긴다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "batch.partition-worker.enabled", havingValue = "true")
+public class JdbcPartitionWorker implements ApplicationRunner {
+
+    private final String WORKER_NAME = ManagementFactory.getRuntimeMXBean().getName();
+    private final JdbcPartitionWorkQueue workQueue;
+    private final JobExplorer jobExplorer;
+    private final ApplicationContext applicationContext;
+    private final TaskExecutor taskExecutor;
+    private final int concurrency;
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+
+    private volatile boolean running = true;
+
+    public JdbcPartitionWorker(JdbcPartitionWorkQueue workQueue, JobExplorer jobExplorer, ApplicationContext applicationContext, TaskExecutor taskExecutor, ConcurrencySizing concurrencySizing, @Value("${batch.partition-worker.concurrency:}") String concurrency, @Value("${spring.batch.job.names:}") String jobNames) {
+        if (StringUtils.hasText(jobNames) && !"NONE".equals(jobNames.trim())) {
+            throw new IllegalStateException("partition worker 는 job 을 실행하지 않는 JVM 에서만 실행할 수 있습니다 (--job.name=NONE) : " + jobNames);
+        }
+
+        this.workQueue = workQueue;
+        this.jobExplorer = jobExplorer;
+        this.applicationContext = applicationContext;
+        this.taskExecutor = taskExecutor;
+        this.concurrency = concurrencySizing.getConcurrency(concurrency);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        log.info("partition worker {} 시작, thread {}개", WORKER_NAME, concurrency);
+
+        long heartbeatInterval = Math.max(1, workQueue.getHeartbeatTimeout() / 3);
+        heartbeat.scheduleAtFixedRate(() -> workQueue.heartbeat(WORKER_NAME), heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < concurrency; i++) {
+            taskExecutor.execute(this::poll);
+        }
+
+        shutdown.await();
+    }
+
+    private void poll() {
+        while (running) {
+            try {
+                PartitionWork work = workQueue.claim(WORKER_NAME);
+                if (work == null) {
+                    Thread.sleep(workQueue.getPollInterval());
+                    continue;
+                }
+
+                execute(work);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("partition queue 조회 실패", e);
+            }
+        }
+    }
+
+    private void execute(PartitionWork work) {
+        try {
+            StepExecution stepExecution = jobExplorer.getStepExecution(work.getJobExecutionId(), work.getStepExecutionId());
+            if (stepExecution == null) {
+                log.warn("StepExecution {} 가 없습니다", work.getStepExecutionId());
+                return;
+            }
+
+            Step step = applicationContext.getBean(work.getStepName(), Step.class);
+            step.execute(stepExecution);
+        } catch (Throwable e) {
+            log.error("partition {} 실행 실패", work.getStepExecutionId(), e);
+        } finally {
+            workQueue.complete(work, WORKER_NAME);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        heartbeat.shutdownNow();
+        shutdown.countDown();
+    }
+}
@@ -0,0 +1,64 @@
+package spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * partition 을 JdbcPartitionWorkQueue 에 넣고, 다른 JVM 의 JdbcPartitionWorker 가 모두 처리할 때까지 기다린다.
+ * 기다리는 동안 heartbeat 가 끊긴 worker 의 partition 은 다시 READY 로 돌려서 다른 worker 가 이어서 처리하게 한다.
+ */
+@Slf4j
+public class JdbcWorkQueuePartitionHandler implements PartitionHandler {
+
+    private final JdbcPartitionWorkQueue workQueue;
+    private final JobExplorer jobExplorer;
+    private final ConcurrencySizing concurrencySizing;
+    private final String stepName;
+
+    public JdbcWorkQueuePartitionHandler(JdbcPartitionWorkQueue workQueue, JobExplorer jobExplorer, ConcurrencySizing concurrencySizing, String stepName) {
+        this.workQueue = workQueue;
+        this.jobExplorer = jobExplorer;
+        this.concurrencySizing = concurrencySizing;
+        this.stepName = stepName;
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+        int gridSize = concurrencySizing.getConcurrency(managerStepExecution.getJobParameters());
+        Set<StepExecution> stepExecutions = stepSplitter.split(managerStepExecution, gridSize);
+
+        long deadline = System.currentTimeMillis() + workQueue.getTimeout();
+        try {
+            workQueue.enqueue(managerStepExecution, stepName, stepExecutions);
+
+            int unfinished;
+            while ((unfinished = workQueue.countUnfinished(managerStepExecution)) > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TimeoutException(unfinished + "개 partition 이 " + workQueue.getTimeout() + "ms 안에 끝나지 않았습니다");
+                }
+
+                Thread.sleep(workQueue.getPollInterval());
+
+                int reclaimed = workQueue.reclaim(managerStepExecution);
+                if (reclaimed > 0) {
+                    log.warn("heartbeat 가 끊긴 partition {}개를 다시 queue 에 넣었습니다", reclaimed);
+                }
+            }
+        } finally {
+            workQueue.delete(managerStepExecution);
+        }
+
+        //worker 가 저장한 최종 상태로 다시 조회
+        return stepExecutions.stream()
+                .map(stepExecution -> jobExplorer.getStepExecution(stepExecution.getJobExecutionId(), stepExecution.getId()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,136 @@
+package spring.batch.part6;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import spring.batch.part4_1.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 여러 thread 가 같이 사용하는 회원 reader.
+ * offset 대신 "id > :lastId order by id" 로 페이지를 조회하므로 뒤쪽 페이지도 index 로 바로 찾는다.
+ *
+ * 페이지 조회와 회원 할당은 lock 안에서 처리해서 thread 마다 다른 회원을 받는다.
+ * 읽었지만 아직 commit 되지 않은 id 를 모아두고, 그보다 작은 id 까지만 lastId 로 저장한다.
+ * chunk 의 id 는 chunk transaction 이 commit 된 후에만 풀어주고, rollback 되면 풀어주지 않아서 lastId 가 그 id 를 넘지 않는다.
+ * 재시작하면 lastId 다음부터 조회하므로 commit 된 구간은 다시 읽지 않고, commit 되지 않은 회원은 다시 읽는다.
+ */
+public class KeysetPagingUserItemReader implements ItemStreamReader<User> {
+
+    private static final String QUERY = "select u from User u where u.id > :lastId order by u.id";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int pageSize;
+    private final String lastIdKey;
+
+    private final Deque<User> page = new ArrayDeque<>();
+    //읽었지만 아직 commit 되지 않은 id
+    private final NavigableSet<Long> inFlightIds = new ConcurrentSkipListSet<>();
+    //현재 thread 의 chunk transaction 에서 읽은 id, transaction 이 끝나면 비운다
+    private final ThreadLocal<List<Long>> chunkIds = new ThreadLocal<>();
+
+    private long lastReadId;
+    private boolean lastPage;
+
+    public KeysetPagingUserItemReader(EntityManagerFactory entityManagerFactory, int pageSize, String name) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+        this.lastIdKey = name + ".lastId";
+    }
+
+    @Override
+    public synchronized User read() {
+        if (page.isEmpty() && !lastPage) {
+            readPage();
+        }
+
+        User user = page.poll();
+        if (user == null) {
+            return null;
+        }
+
+        lastReadId = user.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlightIds.add(lastReadId);
+            currentChunkIds().add(lastReadId);
+        }
+
+        return user;
+    }
+
+    //chunk transaction 에서 처음 읽을 때 commit 후 id 를 풀어주도록 등록한다
+    private List<Long> currentChunkIds() {
+        List<Long> ids = chunkIds.get();
+        if (ids != null) {
+            return ids;
+        }
+
+        List<Long> newIds = new ArrayList<>();
+        chunkIds.set(newIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    inFlightIds.removeAll(newIds);
+                }
+                chunkIds.remove();
+            }
+        });
+
+        return newIds;
+    }
+
+    private void readPage() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<User> users = entityManager.createQuery(QUERY, User.class)
+                    .setParameter("lastId", lastReadId)
+                    .setMaxResults(pageSize)
+                    .getResultList();
+
+            page.addAll(users);
+            lastPage = users.size() < pageSize;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        page.clear();
+        inFlightIds.clear();
+        lastPage = false;
+        lastReadId = executionContext.containsKey(lastIdKey) ? executionContext.getLong(lastIdKey) : 0L;
+    }
+
+    //chunk 를 commit 하기 직전에 호출되므로 지금 chunk 의 id 는 아직 풀려있지 않다
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(lastIdKey, committedId());
+    }
+
+    private synchronized long committedId() {
+        if (inFlightIds.isEmpty()) {
+            return lastReadId;
+        }
+
+        return inFlightIds.first() - 1;
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        page.clear();
+        inFlightIds.clear();
+        chunkIds.remove();
+    }
+}
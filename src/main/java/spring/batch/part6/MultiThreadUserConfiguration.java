@@ -6,59 +6,62 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
+import spring.batch.part4_1.LevelUpCountListener;
 import spring.batch.part4_1.LevelUpJobExecutionListener;
-import spring.batch.part4_1.SaveUserTasklet;
 import spring.batch.part4_1.User;
+import spring.batch.part4_1.UserBulkInsertItemWriter;
+import spring.batch.part4_1.UserGeneratorItemReader;
+import spring.batch.part4_1.UserLevelUpJdbcItemWriter;
 import spring.batch.part4_1.UserRepository;
+import spring.batch.part4_1.UserWriteMode;
+import spring.batch.part5.CsvItemWriter;
+import spring.batch.part5.DailyOrderStatisticsItemReader;
 import spring.batch.part5.JobParametersDecide;
 import spring.batch.part5.OrderStatistics;
+import spring.batch.part5.StepMetricsListener;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 @Slf4j
 public class MultiThreadUserConfiguration {
 
     private final String JOB_NAME = "multiThreadUserJob";
-    private final int CHUNK = 1000;
+    private final int CHUNK;
+    private final int DATASET_SIZE;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
     private final TaskExecutor taskExecutor;
+    private final JobExplorer jobExplorer;
+    private final ConcurrencySizing concurrencySizing;
 
-    public MultiThreadUserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    public MultiThreadUserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor, JobExplorer jobExplorer, ConcurrencySizing concurrencySizing, @Value("${batch.chunk-size:1000}") int chunkSize, @Value("${batch.dataset-size:40000}") int datasetSize) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
         this.taskExecutor = taskExecutor;
+        this.jobExplorer = jobExplorer;
+        this.concurrencySizing = concurrencySizing;
+        this.CHUNK = chunkSize;
+        this.DATASET_SIZE = datasetSize;
     }
 
     @Bean(JOB_NAME)
@@ -66,8 +69,8 @@ public class MultiThreadUserConfiguration {
         return this.jobBuilderFactory.get(JOB_NAME)
                 .incrementer(new RunIdIncrementer())
                 .start(this.saveUserStep())
-                .next(this.userLevelUpStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .next(this.userLevelUpStep(null))
+                .listener(new LevelUpJobExecutionListener(jobExplorer))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
                 .to(this.orderStatisticsStep(null))
@@ -89,82 +92,47 @@ public class MultiThreadUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월 _일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount","date"});
-
-       DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-       lineAggregator.setDelimiter(",");
-       lineAggregator.setFieldExtractor(fieldExtractor);
-
-       //step 이 끝나는 시점에 한번에 파일 생성
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME+"_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount_date"))
-                .build();
-        itemWriter.afterPropertiesSet();
-
-        return itemWriter;
+        return CsvItemWriter.orderStatistics(new FileSystemResource("output/" + fileName), JOB_NAME+"_orderStatisticsItemWriter");
     }
 
     private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
         YearMonth yearMonth = YearMonth.parse(date);
 
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK)
-                .name(JOB_NAME+"_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
+        //한달치 주문을 한번만 읽으면서 일별로 합산
+        DailyOrderStatisticsItemReader itemReader = new DailyOrderStatisticsItemReader(this.dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), CHUNK);
+        itemReader.setName(JOB_NAME+"_orderStatisticsItemReader");
 
-        itemReader.afterPropertiesSet();
         return itemReader;
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .<User, User>chunk(CHUNK)
+                .reader(new UserGeneratorItemReader(DATASET_SIZE))
+                .writer(new UserBulkInsertItemWriter(dataSource))
                 .build();
     }
 
     @Bean(JOB_NAME+"_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
         return  this.stepBuilderFactory.get(JOB_NAME+"_userLevelUpStep")
                 .<User, User>chunk(CHUNK)
                 .reader(itemReader())
                 .processor(itemProcessor())
-                .writer(itemWriter())
+                .writer(userItemWriter(null))
+                .listener(new StepMetricsListener())
+                .listener(new LevelUpCountListener())
                 .taskExecutor(this.taskExecutor)
-                .throttleLimit(8)
+                .throttleLimit(concurrencySizing.getConcurrency(concurrency))
                 .build();
     }
 
-    private ItemWriter<? super User> itemWriter() {
-        return users -> {
-            users.forEach(u -> {
-                u.levelUp();
-                userRepository.save(u);
-            });
-        };
+    @Bean(JOB_NAME + "_userItemWriter")
+    @StepScope
+    public ItemWriter<User> userItemWriter(@Value("#{jobParameters[userWriter]}") String userWriter) {
+        return UserLevelUpJdbcItemWriter.forMode(UserWriteMode.of(userWriter), dataSource, userRepository);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
@@ -177,16 +145,8 @@ public class MultiThreadUserConfiguration {
         };
     }
 
-    private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
+    //JpaPagingItemReader 는 thread safe 하지 않으므로 keyset 페이징 reader 를 thread 끼리 공유한다
+    private ItemReader<? extends User> itemReader() {
+        return new KeysetPagingUserItemReader(entityManagerFactory, CHUNK, JOB_NAME + "_userItemReader");
     }
 }
@@ -0,0 +1,73 @@
+package spring.batch.part6;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * chunk 를 subBatches 개 묶음으로 나눠서 ForkJoinPool 에서 동시에 process 하고, 결과는 읽은 순서대로 writer 에 넘긴다.
+ * AsyncItemProcessor 처럼 item 마다 작업과 Future 를 만들지 않고 묶음마다 하나씩만 만든다.
+ * reader, writer 는 step thread 에서 그대로 실행되므로 재시작과 transaction 은 일반 chunk step 과 같다.
+ */
+public class ParallelChunkProcessor<I, O> extends SimpleChunkProcessor<I, O> {
+
+    private final ForkJoinPool pool;
+    private final int subBatches;
+
+    public ParallelChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor, ItemWriter<? super O> itemWriter, ForkJoinPool pool, int subBatches) {
+        super(itemProcessor, itemWriter);
+        this.pool = pool;
+        this.subBatches = Math.max(1, subBatches);
+    }
+
+    @Override
+    protected Chunk<O> transform(StepContribution contribution, Chunk<I> inputs) throws Exception {
+        List<I> items = inputs.getItems();
+        int subBatchSize = Math.max(1, (items.size() + subBatches - 1) / subBatches);
+
+        List<ForkJoinTask<List<O>>> tasks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += subBatchSize) {
+            List<I> subBatch = items.subList(from, Math.min(from + subBatchSize, items.size()));
+            tasks.add(pool.submit(() -> process(subBatch)));
+        }
+
+        Chunk<O> outputs = new Chunk<>();
+        Chunk<I>.ChunkIterator iterator = inputs.iterator();
+        try {
+            for (ForkJoinTask<List<O>> task : tasks) {
+                for (O output : task.get()) {
+                    iterator.next();
+                    if (output != null) {
+                        outputs.add(output);
+                    } else {
+                        //SimpleChunkProcessor 처럼 filter 된 item 은 inputs 에서 제거
+                        iterator.remove();
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            inputs.clear();
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        return outputs;
+    }
+
+    private List<O> process(List<I> subBatch) throws Exception {
+        List<O> outputs = new ArrayList<>(subBatch.size());
+        for (I item : subBatch) {
+            outputs.add(doProcess(item));
+        }
+
+        return outputs;
+    }
+}
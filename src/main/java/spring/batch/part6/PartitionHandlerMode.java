@@ -0,0 +1,20 @@
+package spring.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * partition 실행 방식. jobParameters[partitionHandler] 로 선택한다. (task-executor, work-stealing, jdbc-queue)
+ */
+public enum PartitionHandlerMode {
+    TASK_EXECUTOR,
+    WORK_STEALING,
+    JDBC_QUEUE;
+
+    public static PartitionHandlerMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return TASK_EXECUTOR;
+        }
+
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -7,38 +7,38 @@ import org.springframework.batch.core.configuration.annotation.JobBuilderFactory
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
 import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
+import spring.batch.part4_1.LevelUpCountListener;
 import spring.batch.part4_1.LevelUpJobExecutionListener;
-import spring.batch.part4_1.SaveUserTasklet;
 import spring.batch.part4_1.User;
+import spring.batch.part4_1.UserBulkInsertItemWriter;
+import spring.batch.part4_1.UserGeneratorItemReader;
+import spring.batch.part4_1.UserLevelUpJdbcItemWriter;
 import spring.batch.part4_1.UserRepository;
+import spring.batch.part4_1.UserWriteMode;
+import spring.batch.part5.CsvItemWriter;
+import spring.batch.part5.DailyOrderStatisticsItemReader;
 import spring.batch.part5.JobParametersDecide;
 import spring.batch.part5.OrderStatistics;
+import spring.batch.part5.StepMetricsListener;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,21 +47,30 @@ import java.util.Map;
 public class PartitionUserConfiguration {
 
     private final String JOB_NAME = "partitionUserJob";
-    private final int CHUNK = 1000;
+    private final int CHUNK;
+    private final int DATASET_SIZE;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
     private final TaskExecutor taskExecutor;
+    private final ConcurrencySizing concurrencySizing;
+    private final JdbcPartitionWorkQueue workQueue;
+    private final JobExplorer jobExplorer;
 
-    public PartitionUserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    public PartitionUserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor, ConcurrencySizing concurrencySizing, JdbcPartitionWorkQueue workQueue, JobExplorer jobExplorer, @Value("${batch.chunk-size:1000}") int chunkSize, @Value("${batch.dataset-size:40000}") int datasetSize) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
         this.taskExecutor = taskExecutor;
+        this.concurrencySizing = concurrencySizing;
+        this.workQueue = workQueue;
+        this.jobExplorer = jobExplorer;
+        this.CHUNK = chunkSize;
+        this.DATASET_SIZE = datasetSize;
     }
 
     @Bean(JOB_NAME)
@@ -70,7 +79,7 @@ public class PartitionUserConfiguration {
                 .incrementer(new RunIdIncrementer())
                 .start(this.saveUserStep())
                 .next(this.userLevelUpManagerStep())
-                .listener(new LevelUpJobExecutionListener(userRepository))
+                .listener(new LevelUpJobExecutionListener(jobExplorer))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
                 .to(this.orderStatisticsStep(null))
@@ -92,60 +101,25 @@ public class PartitionUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월 _일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount","date"});
-
-       DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-       lineAggregator.setDelimiter(",");
-       lineAggregator.setFieldExtractor(fieldExtractor);
-
-       //step 이 끝나는 시점에 한번에 파일 생성
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME+"_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount_date"))
-                .build();
-        itemWriter.afterPropertiesSet();
-
-        return itemWriter;
+        return CsvItemWriter.orderStatistics(new FileSystemResource("output/" + fileName), JOB_NAME+"_orderStatisticsItemWriter");
     }
 
     private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
         YearMonth yearMonth = YearMonth.parse(date);
 
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(CHUNK)
-                .name(JOB_NAME+"_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
+        //한달치 주문을 한번만 읽으면서 일별로 합산
+        DailyOrderStatisticsItemReader itemReader = new DailyOrderStatisticsItemReader(this.dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), CHUNK);
+        itemReader.setName(JOB_NAME+"_orderStatisticsItemReader");
 
-        itemReader.afterPropertiesSet();
         return itemReader;
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .<User, User>chunk(CHUNK)
+                .reader(new UserGeneratorItemReader(DATASET_SIZE))
+                .writer(new UserBulkInsertItemWriter(dataSource))
                 .build();
     }
 
@@ -155,36 +129,57 @@ public class PartitionUserConfiguration {
                 .<User, User>chunk(CHUNK)
                 .reader(itemReader(null, null))
                 .processor(itemProcessor())
-                .writer(itemWriter())
+                .writer(userItemWriter(null))
+                .listener(new StepMetricsListener())
+                .listener(new LevelUpCountListener())
                 .build();
     }
 
     @Bean(JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
-                .partitioner(JOB_NAME+"_userLevelUpStep", new UserLevelUpPartitioner(userRepository)) //ExecutionContext 에 value 할당
+                .partitioner(JOB_NAME+"_userLevelUpStep", userLevelUpPartitioner(null)) //ExecutionContext 에 value 할당
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(partitionHandler(null))
                 .build();
     }
 
+    //jobParameters[partitionHandler]=work-stealing 이면 작은 partition 여러개를 worker 들이 queue 에서 가져가며 처리하고,
+    //jdbc-queue 이면 partition_work_queue 테이블을 통해 다른 JVM 의 worker 가 처리한다
+    @Bean(JOB_NAME + "_partitionHandler")
+    @StepScope
+    public PartitionHandler partitionHandler(@Value("#{jobParameters[partitionHandler]}") String partitionHandler) throws Exception {
+        switch (PartitionHandlerMode.of(partitionHandler)) {
+            case WORK_STEALING:
+                return new WorkStealingPartitionHandler(userLevelUpStep(), this.taskExecutor, concurrencySizing);
+            case JDBC_QUEUE:
+                return new JdbcWorkQueuePartitionHandler(workQueue, jobExplorer, concurrencySizing, JOB_NAME + "_userLevelUpStep");
+            default:
+                return taskExecutorPartitionHandler();
+        }
+    }
+
     @Bean(JOB_NAME + "_taskExecutorPartitionHandler")
     PartitionHandler taskExecutorPartitionHandler() throws Exception {
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        //grid size 는 실행할 때 jobParameters[concurrency], cpu 수, connection pool 크기로 정한다
+        TaskExecutorPartitionHandler handler = new SizedTaskExecutorPartitionHandler(concurrencySizing);
         handler.setStep(userLevelUpStep());
         handler.setTaskExecutor(this.taskExecutor);
-        handler.setGridSize(8);
 
         return handler;
     }
 
-    private ItemWriter<? super User> itemWriter() {
-        return users -> {
-            users.forEach(u -> {
-                u.levelUp();
-                userRepository.save(u);
-            });
-        };
+    //jobParameters[partitionWeight]=orders 이면 주문 건수까지 반영해서 partition 을 나눈다
+    @Bean(JOB_NAME + "_userLevelUpPartitioner")
+    @StepScope
+    public Partitioner userLevelUpPartitioner(@Value("#{jobParameters[partitionWeight]}") String partitionWeight) {
+        return new QuantileUserLevelUpPartitioner(dataSource, "orders".equalsIgnoreCase(partitionWeight));
+    }
+
+    @Bean(JOB_NAME + "_userItemWriter")
+    @StepScope
+    public ItemWriter<User> userItemWriter(@Value("#{jobParameters[userWriter]}") String userWriter) {
+        return UserLevelUpJdbcItemWriter.forMode(UserWriteMode.of(userWriter), dataSource, userRepository);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
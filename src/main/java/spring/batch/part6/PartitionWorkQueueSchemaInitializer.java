@@ -0,0 +1,29 @@
+package spring.batch.part6;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.init.DataSourceScriptDatabaseInitializer;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.boot.sql.init.DatabaseInitializationSettings;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+/**
+ * partition-queue.sql 로 partition_work_queue 테이블을 만든다.
+ * spring batch 의 schema 처럼 batch.partition-queue.initialize-schema (embedded, always, never) 로 실행 여부를 정하고, 기본값은 embedded DB 일때만 실행한다.
+ */
+@Component
+public class PartitionWorkQueueSchemaInitializer extends DataSourceScriptDatabaseInitializer {
+
+    public PartitionWorkQueueSchemaInitializer(DataSource dataSource, @Value("${batch.partition-queue.initialize-schema:embedded}") String mode) {
+        super(dataSource, settings(mode));
+    }
+
+    private static DatabaseInitializationSettings settings(String mode) {
+        DatabaseInitializationSettings settings = new DatabaseInitializationSettings();
+        settings.setSchemaLocations(Collections.singletonList("classpath:partition-queue.sql"));
+        settings.setMode(DatabaseInitializationMode.valueOf(mode.trim().toUpperCase()));
+        return settings;
+    }
+}
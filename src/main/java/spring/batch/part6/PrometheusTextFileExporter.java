@@ -0,0 +1,156 @@
+package spring.batch.part6;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Micrometer 전역 registry 에 SimpleMeterRegistry 를 붙이고, 모든 meter 를 Prometheus text 형식으로 파일에 쓴다.
+ * batch.metrics.file 을 설정한 경우에만 동작하고, batch.metrics.interval 마다 그리고 종료할 때 파일을 다시 쓴다.
+ * node_exporter textfile collector 로 읽거나 파일을 그대로 보면 되므로 별도 서버가 필요 없다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "batch.metrics.file")
+public class PrometheusTextFileExporter {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-exporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Path file;
+
+    public PrometheusTextFileExporter(@Value("${batch.metrics.file}") String file, @Value("${batch.metrics.interval:10000}") long interval) {
+        this.file = Paths.get(file).toAbsolutePath();
+        Metrics.addRegistry(registry);
+        scheduler.scheduleWithFixedDelay(this::export, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        export();
+        Metrics.removeRegistry(registry);
+    }
+
+    //임시 파일에 쓴 후 이동해서 읽는 쪽이 쓰다 만 파일을 보지 않게 한다
+    public void export() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, scrape().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("metric 파일 {} 을 쓰지 못했습니다", file, e);
+        }
+    }
+
+    public String scrape() {
+        //metric 이름별로 TYPE 한줄과 sample 들
+        Map<String, String> types = new TreeMap<>();
+        Map<String, List<String>> samples = new TreeMap<>();
+
+        for (Meter meter : registry.getMeters()) {
+            String name = sanitize(meter.getId().getName());
+            String labels = labels(meter.getId().getTags());
+
+            meter.use(
+                    gauge -> add(types, samples, name, "gauge", name, labels, gauge.value()),
+                    counter -> add(types, samples, name + "_total", "counter", name + "_total", labels, counter.count()),
+                    timer -> {
+                        add(types, samples, name + "_seconds", "summary", name + "_seconds_count", labels, timer.count());
+                        add(types, samples, name + "_seconds", "summary", name + "_seconds_sum", labels, timer.totalTime(SECONDS));
+                        add(types, samples, name + "_seconds_max", "gauge", name + "_seconds_max", labels, timer.max(SECONDS));
+                    },
+                    summary -> {
+                        add(types, samples, name, "summary", name + "_count", labels, summary.count());
+                        add(types, samples, name, "summary", name + "_sum", labels, summary.totalAmount());
+                        add(types, samples, name + "_max", "gauge", name + "_max", labels, summary.max());
+                    },
+                    longTaskTimer -> {
+                        add(types, samples, name + "_seconds_active", "gauge", name + "_seconds_active", labels, longTaskTimer.activeTasks());
+                        add(types, samples, name + "_seconds_duration", "gauge", name + "_seconds_duration", labels, longTaskTimer.duration(SECONDS));
+                    },
+                    timeGauge -> add(types, samples, name + "_seconds", "gauge", name + "_seconds", labels, timeGauge.value(SECONDS)),
+                    functionCounter -> add(types, samples, name + "_total", "counter", name + "_total", labels, functionCounter.count()),
+                    functionTimer -> {
+                        add(types, samples, name + "_seconds", "summary", name + "_seconds_count", labels, functionTimer.count());
+                        add(types, samples, name + "_seconds", "summary", name + "_seconds_sum", labels, functionTimer.totalTime(SECONDS));
+                    },
+                    other -> {
+                        for (Measurement measurement : other.measure()) {
+                            String sampleName = name + "_" + measurement.getStatistic().getTagValueRepresentation();
+                            add(types, samples, sampleName, "untyped", sampleName, labels, measurement.getValue());
+                        }
+                    });
+        }
+
+        StringBuilder text = new StringBuilder();
+        samples.forEach((family, lines) -> {
+            text.append("# TYPE ").append(family).append(' ').append(types.get(family)).append('\n');
+            lines.forEach(line -> text.append(line).append('\n'));
+        });
+
+        return text.toString();
+    }
+
+    private static void add(Map<String, String> types, Map<String, List<String>> samples, String family, String type, String sampleName, String labels, double value) {
+        types.putIfAbsent(family, type);
+        samples.computeIfAbsent(family, key -> new ArrayList<>()).add(sampleName + labels + ' ' + format(value));
+    }
+
+    private static String labels(List<Tag> tags) {
+        if (tags.isEmpty()) {
+            return "";
+        }
+
+        return tags.stream()
+                .map(tag -> sanitize(tag.getKey()) + "=\"" + escape(tag.getValue()) + '"')
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+
+        return Double.toString(value);
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_:]", "_");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,62 @@
+package spring.batch.part6;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 회원 id 를 실제 row 분포 기준으로 gridSize 개 구간으로 나눈다.
+ * min ~ max id 를 같은 길이로 나누면 id 가 비어있는 구간이 많을 때 partition 마다 처리량이 크게 달라진다.
+ *
+ * weightByOrders 이면 회원마다 (주문 건수 + 1) 을 가중치로 두고 가중치 합이 비슷하도록 나눈다.
+ * 구간 사이 빈 id 도 포함되도록 앞 partition 의 maxId + 1 을 다음 partition 의 minId 로 사용한다.
+ */
+public class QuantileUserLevelUpPartitioner implements Partitioner {
+
+    //id 순서로 행 번호를 매겨서 gridSize 개 묶음으로 나눈 후 묶음별 min, max id 조회
+    private static final String QUANTILE_SQL = "select min(id), max(id) from " +
+            "(select id, ntile(?) over (order by id) bucket from user) t " +
+            "group by bucket order by min(id)";
+
+    //id 순서로 누적 가중치를 구해서 전체 가중치의 1/gridSize 단위로 묶음 번호를 매긴다
+    private static final String WEIGHTED_QUANTILE_SQL = "select min(id), max(id) from " +
+            "(select id, floor((sum(weight) over (order by id) - 1) * ? / sum(weight) over ()) bucket from " +
+            "(select u.id, count(o.id) + 1 weight from user u left join orders o on o.user_id = u.id group by u.id) w) t " +
+            "group by bucket order by min(id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean weightByOrders;
+
+    public QuantileUserLevelUpPartitioner(DataSource dataSource, boolean weightByOrders) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.weightByOrders = weightByOrders;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        List<long[]> ranges = jdbcTemplate.query(weightByOrders ? WEIGHTED_QUANTILE_SQL : QUANTILE_SQL,
+                (resultSet, i) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)},
+                gridSize);
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        long start = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+        for (int number = 0; number < ranges.size(); number++) {
+            ExecutionContext valueExecutionContext = new ExecutionContext();
+
+            long end = ranges.get(number)[1];
+            valueExecutionContext.putLong("minId", start);
+            valueExecutionContext.putLong("maxId", end);
+
+            result.put("partition" + number, valueExecutionContext);
+            start = end + 1;
+        }
+
+        return result;
+    }
+}
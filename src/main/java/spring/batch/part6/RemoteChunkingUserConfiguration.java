@@ -0,0 +1,212 @@
+package spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.integration.chunk.RemoteChunkingManagerStepBuilderFactory;
+import org.springframework.batch.integration.config.annotation.EnableBatchIntegration;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import spring.batch.part4_1.LevelUpCountListener;
+import spring.batch.part4_1.LevelUpJobExecutionListener;
+import spring.batch.part4_1.User;
+import spring.batch.part4_1.UserBulkInsertItemWriter;
+import spring.batch.part4_1.UserGeneratorItemReader;
+import spring.batch.part4_1.UserLevelUpJdbcItemWriter;
+import spring.batch.part4_1.UserRepository;
+import spring.batch.part4_1.UserWriteMode;
+import spring.batch.part5.CsvItemWriter;
+import spring.batch.part5.DailyOrderStatisticsItemReader;
+import spring.batch.part5.JobParametersDecide;
+import spring.batch.part5.OrderStatistics;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.time.YearMonth;
+
+/**
+ * remote chunking 으로 회원 등급을 올린다.
+ * manager step 은 회원을 읽어서 chunk 단위로 requests channel 에 보내기만 하고, worker 가 processor, writer 를 실행한 결과를 replies channel 로 받는다.
+ * channel 은 broker 없이 같은 JVM 안의 ExecutorChannel, QueueChannel 을 사용하고, reader 는 하나여도 worker thread 수 만큼 chunk 를 동시에 처리한다.
+ */
+@Configuration
+@EnableBatchIntegration
+@Slf4j
+public class RemoteChunkingUserConfiguration {
+
+    private final String JOB_NAME = "remoteChunkingUserJob";
+    private final int CHUNK;
+    private final int DATASET_SIZE;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final RemoteChunkingManagerStepBuilderFactory managerStepBuilderFactory;
+    private final PlatformTransactionManager transactionManager;
+    private final UserRepository userRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+    private final JobExplorer jobExplorer;
+    private final ConcurrencySizing concurrencySizing;
+    //worker 는 job 실행 전에 만들어지므로 jobParameters 대신 설정으로 writer 를 고른다
+    private final String WORKER_USER_WRITER;
+
+    public RemoteChunkingUserConfiguration(JobBuilderFactory jobBuilderFactory, StepBuilderFactory stepBuilderFactory, RemoteChunkingManagerStepBuilderFactory managerStepBuilderFactory, PlatformTransactionManager transactionManager, UserRepository userRepository, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor, JobExplorer jobExplorer, ConcurrencySizing concurrencySizing, @Value("${batch.chunk-size:1000}") int chunkSize, @Value("${batch.dataset-size:40000}") int datasetSize, @Value("${batch.remote-chunking.user-writer:}") String workerUserWriter) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.managerStepBuilderFactory = managerStepBuilderFactory;
+        this.transactionManager = transactionManager;
+        this.userRepository = userRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+        this.taskExecutor = taskExecutor;
+        this.jobExplorer = jobExplorer;
+        this.concurrencySizing = concurrencySizing;
+        this.CHUNK = chunkSize;
+        this.DATASET_SIZE = datasetSize;
+        this.WORKER_USER_WRITER = workerUserWriter;
+    }
+
+    @Bean(JOB_NAME)
+    public Job userJob() throws Exception {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.saveUserStep())
+                .next(this.userLevelUpStep(null))
+                .listener(new LevelUpJobExecutionListener(jobExplorer))
+                .next(new JobParametersDecide("date"))
+                .on(JobParametersDecide.CONTINUE.getName())
+                .to(this.orderStatisticsStep(null))
+                .build()
+                .build();
+    }
+
+    @Bean(JOB_NAME+"_orderStatisticsStep")
+    @JobScope
+    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME+"_orderStatisticsStep")
+                .<OrderStatistics, OrderStatistics> chunk(CHUNK)
+                .reader(orderStatisticsItemReader(date))
+                .writer(orderStatisticsItemWriter(date))
+                .build();
+    }
+
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+        String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월 _일별_주문_금액.csv";
+
+        return CsvItemWriter.orderStatistics(new FileSystemResource("output/" + fileName), JOB_NAME+"_orderStatisticsItemWriter");
+    }
+
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        //한달치 주문을 한번만 읽으면서 일별로 합산
+        DailyOrderStatisticsItemReader itemReader = new DailyOrderStatisticsItemReader(this.dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth(), CHUNK);
+        itemReader.setName(JOB_NAME+"_orderStatisticsItemReader");
+
+        return itemReader;
+    }
+
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .<User, User>chunk(CHUNK)
+                .reader(new UserGeneratorItemReader(DATASET_SIZE))
+                .writer(new UserBulkInsertItemWriter(dataSource))
+                .build();
+    }
+
+    //manager 는 읽기만 하고, 응답을 기다리지 않고 보낼 수 있는 chunk 수를 jobParameters[concurrency] 로 제한한다
+    //worker 에는 step 이 없으므로 등급 변경 건수는 manager 가 chunk 를 보낼 때 센다. worker 가 실패하면 step 도 실패한다
+    @Bean(JOB_NAME+"_userLevelUpStep")
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
+        return this.managerStepBuilderFactory.<User, User>get(JOB_NAME+"_userLevelUpStep")
+                .chunk(CHUNK)
+                .reader(itemReader())
+                .outputChannel(requests())
+                .inputChannel(replies())
+                .throttleLimit(concurrencySizing.getConcurrency(concurrency))
+                .listener(new LevelUpCountListener())
+                .build();
+    }
+
+    //worker 가 받은 chunk 를 taskExecutor thread 에서 처리하도록 ExecutorChannel 사용
+    @Bean(JOB_NAME + "_requests")
+    public ExecutorChannel requests() {
+        return new ExecutorChannel(this.taskExecutor);
+    }
+
+    @Bean(JOB_NAME + "_replies")
+    public QueueChannel replies() {
+        return new QueueChannel();
+    }
+
+    //RemoteChunkingWorkerBuilder 는 processor, writer 를 transaction 없이 실행하므로 chunk 하나를 transaction 하나로 처리하도록 직접 만든다
+    @Bean(JOB_NAME + "_workerFlow")
+    public IntegrationFlow workerFlow() throws Exception {
+        ChunkProcessorChunkHandler<User> chunkHandler = new ChunkProcessorChunkHandler<>();
+        chunkHandler.setChunkProcessor(new SimpleChunkProcessor<>(itemProcessor(), userItemWriter()));
+        chunkHandler.afterPropertiesSet();
+
+        return IntegrationFlows.from(requests())
+                .handle(ChunkRequest.class, (request, headers) -> handleChunk(chunkHandler, request), e -> e.transactional(this.transactionManager))
+                .channel(replies())
+                .get();
+    }
+
+    //handler 는 writer 의 예외를 실패 응답으로 바꾸므로, 실패한 chunk 는 직접 rollback 표시를 한다
+    @SuppressWarnings("unchecked")
+    private ChunkResponse handleChunk(ChunkProcessorChunkHandler<User> chunkHandler, ChunkRequest<?> request) {
+        ChunkResponse response;
+        try {
+            response = chunkHandler.handleChunk((ChunkRequest<User>) request);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        if (!response.isSuccessful()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return response;
+    }
+
+    private ItemWriter<User> userItemWriter() {
+        return UserLevelUpJdbcItemWriter.forMode(UserWriteMode.of(WORKER_USER_WRITER), dataSource, userRepository);
+    }
+
+    private ItemProcessor<User, User> itemProcessor() {
+        return user -> {
+            if (user.availableLevelUp()) {
+                return user;
+            }
+
+            return null;
+        };
+    }
+
+    private ItemReader<User> itemReader() {
+        return new KeysetPagingUserItemReader(entityManagerFactory, CHUNK, JOB_NAME + "_userItemReader");
+    }
+}
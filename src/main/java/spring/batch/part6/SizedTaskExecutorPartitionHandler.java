@@ -0,0 +1,28 @@
+package spring.batch.part6;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * grid size 를 고정값 대신 실행할 때마다 ConcurrencySizing 으로 정한다. (jobParameters[concurrency])
+ */
+public class SizedTaskExecutorPartitionHandler extends TaskExecutorPartitionHandler {
+
+    private final ConcurrencySizing concurrencySizing;
+
+    public SizedTaskExecutorPartitionHandler(ConcurrencySizing concurrencySizing) {
+        this.concurrencySizing = concurrencySizing;
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+        int gridSize = concurrencySizing.getConcurrency(managerStepExecution.getJobParameters());
+        Set<StepExecution> stepExecutions = stepSplitter.split(managerStepExecution, gridSize);
+
+        return doHandle(managerStepExecution, stepExecutions);
+    }
+}
@@ -0,0 +1,19 @@
+package spring.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * 공유 TaskExecutor 의 thread 종류. batch.task-executor 설정으로 선택한다. (platform, virtual)
+ */
+public enum TaskExecutorMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static TaskExecutorMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return PLATFORM;
+        }
+
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,231 @@
+package spring.batch.part6;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import spring.batch.SpringBatchExApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * part6 의 회원 등급 Job 들을 같은 데이터셋(H2 file mode)으로 하나씩 실행해서 처리량을 비교한다.
+ *
+ * ./gradlew userJobBenchmark -PbenchmarkArgs="--dataset-size=400000 --chunk-size=1000 --concurrency=8 --user-writer=jdbc"
+ *
+ * Job 마다 DB 파일을 지우고 새 ApplicationContext 로 실행하므로 saveUserStep 이 매번 같은 데이터를 만든다.
+ * 결과는 --output 디렉토리(기본 build/benchmark)에 benchmark.csv, benchmark.json 으로 남긴다.
+ */
+@Slf4j
+public class UserJobBenchmark {
+
+    private static final List<String> JOB_NAMES = Arrays.asList(
+            "userJob", "multiThreadUserJob", "asyncUserJob", "partitionUserJob", "parallelUserJob", "remoteChunkingUserJob");
+
+    public static void main(String[] args) throws Exception {
+        ApplicationArguments arguments = new DefaultApplicationArguments(args);
+
+        String datasetSize = option(arguments, "dataset-size", "40000");
+        String chunkSize = option(arguments, "chunk-size", "1000");
+        String concurrency = option(arguments, "concurrency", "");
+        String date = option(arguments, "date", "2020-11");
+        String userWriter = option(arguments, "user-writer", "jpa");
+        List<String> jobNames = Arrays.asList(option(arguments, "jobs", String.join(",", JOB_NAMES)).split(","));
+        File output = new File(option(arguments, "output", "build/benchmark")).getAbsoluteFile();
+
+        List<JobResult> results = new ArrayList<>();
+        for (String jobName : jobNames) {
+            File database = new File(output, "db");
+            FileSystemUtils.deleteRecursively(database);
+
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBatchExApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.datasource.url=jdbc:h2:file:" + new File(database, "user").getPath(),
+                            "spring.batch.job.enabled=false",
+                            "spring.batch.jdbc.initialize-schema=always",
+                            "spring.jpa.hibernate.ddl-auto=create",
+                            "spring.jpa.show-sql=false",
+                            "spring.sql.init.mode=never",
+                            "batch.dataset-size=" + datasetSize,
+                            "batch.chunk-size=" + chunkSize,
+                            //remote chunking worker 는 jobParameters 를 받지 못하므로 설정으로 전달
+                            "batch.remote-chunking.user-writer=" + userWriter)
+                    .run();
+
+            try {
+                results.add(run(context, jobName, date, userWriter, concurrency));
+            } finally {
+                context.close();
+            }
+        }
+
+        write(output, results);
+    }
+
+    private static JobResult run(ConfigurableApplicationContext context, String jobName, String date, String userWriter, String concurrency) throws Exception {
+        JobLauncher jobLauncher = context.getBean(JobLauncher.class);
+        Job job = context.getBean(jobName, Job.class);
+
+        JobParametersBuilder jobParameters = new JobParametersBuilder()
+                .addString("date", date)
+                .addString("userWriter", userWriter)
+                .addLong("benchmark.time", System.currentTimeMillis());
+        if (!concurrency.isEmpty()) {
+            jobParameters.addString(ConcurrencySizing.CONCURRENCY, concurrency); //없으면 cpu 수, connection pool 크기로 정한다
+        }
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        JobExecution jobExecution = jobLauncher.run(job, jobParameters.toJobParameters());
+
+        long peakHeap = heapPools.stream()
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+
+        JobResult result = new JobResult(jobExecution, peakHeap);
+        log.info("{} : {} items, {} millis, {} items/sec, peak heap {}MB",
+                jobName, result.getItems(), result.getMillis(), result.getItemsPerSecond(), result.getPeakHeapMb());
+
+        return result;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static void write(File output, List<JobResult> results) throws IOException {
+        output.mkdirs();
+
+        try (PrintWriter writer = new PrintWriter(new File(output, "benchmark.csv"), StandardCharsets.UTF_8.name())) {
+            writer.println("job,step,status,read,write,filter,commit,millis,items_per_sec,peak_heap_mb");
+            for (JobResult job : results) {
+                writer.printf("%s,%s,%s,%d,%d,%d,%d,%d,%d,%d%n", job.getJob(), "TOTAL", job.getStatus(),
+                        job.getItems(), job.getWrites(), job.getFilters(), job.getCommits(), job.getMillis(),
+                        job.getItemsPerSecond(), job.getPeakHeapMb());
+
+                for (StepResult step : job.getSteps()) {
+                    writer.printf("%s,%s,%s,%d,%d,%d,%d,%d,%d,%n", job.getJob(), step.getStep(), step.getStatus(),
+                            step.getRead(), step.getWrite(), step.getFilter(), step.getCommit(), step.getMillis(),
+                            step.getItemsPerSecond());
+                }
+            }
+        }
+
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(new File(output, "benchmark.json"), results);
+
+        log.info("benchmark 결과 : {}", output);
+    }
+
+    private static String option(ApplicationArguments arguments, String name, String defaultValue) {
+        List<String> values = arguments.getOptionValues(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+
+        return values.get(0);
+    }
+
+    private static long millis(Date start, Date end) {
+        if (start == null || end == null) {
+            return 0;
+        }
+
+        return end.getTime() - start.getTime();
+    }
+
+    private static long perSecond(long items, long millis) {
+        return millis == 0 ? 0 : items * 1000 / millis;
+    }
+
+    @Getter
+    public static class JobResult {
+        private final String job;
+        private final String status;
+        private final long items;
+        private final long writes;
+        private final long filters;
+        private final long commits;
+        private final long millis;
+        private final long itemsPerSecond;
+        private final long peakHeapMb;
+        private final List<StepResult> steps = new ArrayList<>();
+
+        JobResult(JobExecution jobExecution, long peakHeap) {
+            this.job = jobExecution.getJobInstance().getJobName();
+            this.status = jobExecution.getStatus().name();
+            this.millis = millis(jobExecution.getStartTime(), jobExecution.getEndTime());
+            this.peakHeapMb = peakHeap / (1024 * 1024);
+
+            jobExecution.getStepExecutions().stream()
+                    .sorted(Comparator.comparing(StepExecution::getId))
+                    .forEach(stepExecution -> steps.add(new StepResult(stepExecution)));
+
+            //partition manager step 은 worker step 의 count 를 합산하고 있으므로 제외
+            this.items = steps.stream().filter(StepResult::isWorker).mapToLong(StepResult::getRead).sum();
+            this.writes = steps.stream().filter(StepResult::isWorker).mapToLong(StepResult::getWrite).sum();
+            this.filters = steps.stream().filter(StepResult::isWorker).mapToLong(StepResult::getFilter).sum();
+            this.commits = steps.stream().filter(StepResult::isWorker).mapToLong(StepResult::getCommit).sum();
+            this.itemsPerSecond = perSecond(items, millis);
+        }
+    }
+
+    @Getter
+    public static class StepResult {
+        private final String step;
+        private final String status;
+        private final long read;
+        private final long write;
+        private final long filter;
+        private final long commit;
+        private final long millis;
+        private final long itemsPerSecond;
+
+        StepResult(StepExecution stepExecution) {
+            this.step = stepExecution.getStepName();
+            this.status = stepExecution.getStatus().name();
+            this.read = stepExecution.getReadCount();
+            this.write = stepExecution.getWriteCount();
+            this.filter = stepExecution.getFilterCount();
+            this.commit = stepExecution.getCommitCount();
+            this.millis = millis(stepExecution.getStartTime(), stepExecution.getEndTime());
+            this.itemsPerSecond = perSecond(read, millis);
+        }
+
+        boolean isWorker() {
+            return !step.endsWith(".manager");
+        }
+    }
+}
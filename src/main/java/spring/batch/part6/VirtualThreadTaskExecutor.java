@@ -0,0 +1,43 @@
+package spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskExecutor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 작업마다 virtual thread 를 하나씩 띄우는 TaskExecutor.
+ * source 는 java 8 이므로 Executors.newVirtualThreadPerTaskExecutor 를 reflection 으로 찾고, 없으면 만들지 않는다.
+ * 동시에 실행되는 작업 수는 제한하지 않고, DB 작업을 하는 thread 수는 ConnectionLimitingDataSource 가 제한한다.
+ * virtual thread 는 daemon thread 라서 따로 종료하지 않는다.
+ */
+@Slf4j
+public class VirtualThreadTaskExecutor implements TaskExecutor {
+
+    private final ExecutorService executorService;
+
+    private VirtualThreadTaskExecutor(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    //runtime 이 virtual thread 를 지원하지 않으면 null
+    public static VirtualThreadTaskExecutor createIfSupported() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new VirtualThreadTaskExecutor((ExecutorService) factory.invoke(null));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            //preview 기능이 꺼진 java 19, 20
+            log.warn("virtual thread 를 사용할 수 없습니다", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executorService.execute(task);
+    }
+}
@@ -0,0 +1,75 @@
+package spring.batch.part6;
+
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 작은 구간 partition 을 많이 만들어서 queue 에 넣고, worker thread 가 queue 가 빌 때까지 하나씩 가져가서 처리한다.
+ * partition 하나가 thread 하나에 묶이지 않으므로 오래 걸리는 구간이 있어도 나머지 worker 가 다른 구간을 계속 처리한다.
+ *
+ * partition 마다 StepExecution 이 따로 저장되므로 재시작하면 완료되지 않은 구간만 다시 queue 에 들어간다.
+ */
+public class WorkStealingPartitionHandler implements PartitionHandler {
+
+    private static final int PARTITIONS_PER_WORKER = 16;
+    private static final int MIN_PARTITIONS = 64;
+    private static final int MAX_PARTITIONS = 512;
+
+    private final Step step;
+    private final TaskExecutor taskExecutor;
+    private final ConcurrencySizing concurrencySizing;
+
+    public WorkStealingPartitionHandler(Step step, TaskExecutor taskExecutor, ConcurrencySizing concurrencySizing) {
+        this.step = step;
+        this.taskExecutor = taskExecutor;
+        this.concurrencySizing = concurrencySizing;
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+        int workers = concurrencySizing.getConcurrency(managerStepExecution.getJobParameters());
+        int gridSize = Math.min(MAX_PARTITIONS, Math.max(MIN_PARTITIONS, workers * PARTITIONS_PER_WORKER));
+
+        Set<StepExecution> stepExecutions = stepSplitter.split(managerStepExecution, gridSize);
+        Queue<StepExecution> queue = new ConcurrentLinkedQueue<>(stepExecutions);
+
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, stepExecutions.size()); i++) {
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                StepExecution stepExecution;
+                while ((stepExecution = queue.poll()) != null) {
+                    execute(stepExecution);
+                }
+                return null;
+            });
+
+            tasks.add(task);
+            taskExecutor.execute(task);
+        }
+
+        for (FutureTask<Void> task : tasks) {
+            task.get();
+        }
+
+        return stepExecutions;
+    }
+
+    private void execute(StepExecution stepExecution) {
+        try {
+            step.execute(stepExecution);
+        } catch (Throwable e) {
+            stepExecution.addFailureException(e);
+        }
+    }
+}
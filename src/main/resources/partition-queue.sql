@@ -0,0 +1,9 @@
+create table if not exists partition_work_queue (
+    step_execution_id bigint not null primary key,
+    job_execution_id bigint not null,
+    manager_step_execution_id bigint not null,
+    step_name varchar(100) not null,
+    status varchar(10) not null,
+    worker varchar(100),
+    heartbeat timestamp null
+);
@@ -2,9 +2,15 @@ package spring.batch;
 
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import spring.batch.part6.TaskExecutorMode;
+import spring.batch.part6.VirtualThreadTaskExecutor;
 
 @Configuration
 @EnableBatchProcessing
@@ -16,4 +22,19 @@ public class TestConfiguration {
         return new JobLauncherTestUtils();
     }
 
+    //applicationTaskExecutor 와 spring integration 의 taskScheduler 가 함께 있으므로 application 처럼 @Primary executor 를 둔다
+    //batch.task-executor=virtual 이면 application 처럼 virtual thread 를 사용한다
+    @Bean
+    @Primary
+    public TaskExecutor testTaskExecutor(@Value("${batch.task-executor:platform}") String taskExecutorMode) {
+        if (TaskExecutorMode.of(taskExecutorMode) == TaskExecutorMode.VIRTUAL) {
+            VirtualThreadTaskExecutor virtualThreadTaskExecutor = VirtualThreadTaskExecutor.createIfSupported();
+            if (virtualThreadTaskExecutor != null) {
+                return virtualThreadTaskExecutor;
+            }
+        }
+
+        return new SimpleAsyncTaskExecutor("test-batch-");
+    }
+
 }
@@ -13,13 +13,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import spring.batch.TestConfiguration;
+import spring.batch.part6.ConcurrencySizing;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.setLenientDateParsing;
 
 @SpringBatchTest
 @RunWith(SpringRunner.class)
-@ContextConfiguration(classes = {SavePersonConfiguration.class, TestConfiguration.class})
+@ContextConfiguration(classes = {SavePersonConfiguration.class, ConcurrencySizing.class, TestConfiguration.class})
 public class SavePersonConfigurationTest {
 
     @Autowired
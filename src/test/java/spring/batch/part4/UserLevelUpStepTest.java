@@ -0,0 +1,94 @@
+package spring.batch.part4;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.batch.TestConfiguration;
+import spring.batch.part4_1.LevelUpCountListener;
+import spring.batch.part4_1.UserConfiguration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+@TestPropertySource(properties = "batch.dataset-size=4000")
+public class UserLevelUpStepTest {
+
+    private static final String SELECT_SQL = "select id, level, updated_date from user order by id";
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void levelUpModesProduceSameLevels() throws Exception {
+        jobLauncherTestUtils.launchStep("userJob_saveUserStep");
+
+        JobExecution chunkExecution = jobLauncherTestUtils.launchStep("userJob_userLevelUpStep");
+        List<Map<String, Object>> chunkUsers = jdbcTemplate.queryForList(SELECT_SQL);
+
+        //등급 업데이트 전 상태로 되돌린 후 sql 방식으로 다시 실행
+        jdbcTemplate.update("update user set level = 'NORMAL', updated_date = null");
+
+        JobExecution sqlExecution = jobLauncherTestUtils.launchStep("userJob_userLevelUpSqlStep");
+        List<Map<String, Object>> sqlUsers = jdbcTemplate.queryForList(SELECT_SQL);
+
+        //projection 방식으로 다시 실행
+        jdbcTemplate.update("update user set level = 'NORMAL', updated_date = null");
+
+        JobExecution projectionExecution = jobLauncherTestUtils.launchStep("userJob_userLevelUpProjectionStep");
+        List<Map<String, Object>> projectionUsers = jdbcTemplate.queryForList(SELECT_SQL);
+
+        //오늘 이미 등급이 바뀐 회원만 남았으므로 다시 실행하면 바뀐 등급이 없다
+        JobExecution againExecution = jobLauncherTestUtils.launchStep("userJob_userLevelUpStep");
+
+        Assertions.assertThat(chunkExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(sqlExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(projectionExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        Assertions.assertThat(sqlUsers)
+                .hasSize(4000)
+                .isEqualTo(chunkUsers)
+                .isEqualTo(projectionUsers);
+
+        Assertions.assertThat(sqlExecution.getStepExecutions().iterator().next().getWriteCount())
+                .isEqualTo(chunkExecution.getStepExecutions().iterator().next().getWriteCount())
+                .isEqualTo(projectionExecution.getStepExecutions().iterator().next().getWriteCount())
+                .isEqualTo(3000);
+
+        //등급은 한번에 여러 단계를 올라갈 수 있으므로 변경 전->변경 후 로 센다
+        Map<String, Long> transitions = new HashMap<>();
+        transitions.put("NORMAL->SILVER", 1000L);
+        transitions.put("NORMAL->GOLD", 1000L);
+        transitions.put("NORMAL->VIP", 1000L);
+
+        Assertions.assertThat(LevelUpCountListener.sum(chunkExecution.getStepExecutions()))
+                .isEqualTo(LevelUpCountListener.sum(sqlExecution.getStepExecutions()))
+                .isEqualTo(LevelUpCountListener.sum(projectionExecution.getStepExecutions()))
+                .isEqualTo(transitions);
+        Assertions.assertThat(LevelUpCountListener.sum(againExecution.getStepExecutions())).isEmpty();
+    }
+
+    //launchStep 은 job 의 step 을 모두 찾으면서 @JobScope 인 orderStatisticsStep.manager 도 생성하므로 date 가 필요하다
+    public JobExecution getJobExecution() {
+        return MetaDataInstanceFactory.createJobExecution("userJob", 0L, 0L, new JobParametersBuilder()
+                .addString("date", "2020-11")
+                .toJobParameters());
+    }
+}
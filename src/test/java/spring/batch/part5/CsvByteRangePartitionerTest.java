@@ -0,0 +1,120 @@
+package spring.batch.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class CsvByteRangePartitionerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void rangesStartAtLineStartsAndCoverFileAfterHeader() throws Exception {
+        String header = "id,name\r\n";
+        StringBuilder content = new StringBuilder(header);
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            //줄 길이를 다르게 해서 구간 경계가 줄 중간에 오도록 한다
+            String name = String.join("", Collections.nCopies(i % 7 + 1, "x"));
+            content.append(i).append(',').append(name).append("\r\n");
+            expected.add(i + ":" + name);
+        }
+        File file = write(content.toString());
+
+        List<ExecutionContext> ranges = ranges(file, 7);
+
+        //경계를 다음 줄 시작으로 미루므로 gridSize 보다 적을 수 있다
+        Assertions.assertThat(ranges).hasSizeBetween(2, 7);
+        Assertions.assertThat(ranges.get(0).getLong(CsvByteRangePartitioner.START_OFFSET)).isEqualTo(header.length());
+        Assertions.assertThat(ranges.get(ranges.size() - 1).getLong(CsvByteRangePartitioner.END_OFFSET)).isEqualTo(file.length());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int i = 0; i < ranges.size(); i++) {
+            long start = ranges.get(i).getLong(CsvByteRangePartitioner.START_OFFSET);
+            Assertions.assertThat(bytes[(int) start - 1]).isEqualTo((byte) '\n');
+            if (i > 0) {
+                Assertions.assertThat(start).isEqualTo(ranges.get(i - 1).getLong(CsvByteRangePartitioner.END_OFFSET));
+            }
+        }
+
+        //구간마다 따로 읽어도 모든 줄을 한번씩만 읽는다
+        List<String> items = new ArrayList<>();
+        for (ExecutionContext range : ranges) {
+            items.addAll(read(file, range));
+        }
+        Assertions.assertThat(items).isEqualTo(expected);
+    }
+
+    @Test
+    public void gridSizeLargerThanLinesMakesOneRangePerLine() throws Exception {
+        File file = write("id,name\n1,a\n2,b\n3,c");
+
+        List<ExecutionContext> ranges = ranges(file, 10);
+
+        Assertions.assertThat(ranges).hasSize(3);
+        Assertions.assertThat(ranges.stream().map(range -> {
+            try {
+                return read(file, range);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).collect(Collectors.toList())).containsExactly(
+                Collections.singletonList("1:a"),
+                Collections.singletonList("2:b"),
+                Collections.singletonList("3:c"));
+    }
+
+    @Test
+    public void headerOnlyFileHasNoRange() throws Exception {
+        File file = write("id,name\n");
+
+        Assertions.assertThat(ranges(file, 4)).isEmpty();
+    }
+
+    private List<ExecutionContext> ranges(File file, int gridSize) {
+        Map<String, ExecutionContext> partitions = new CsvByteRangePartitioner(new FileSystemResource(file), 1).partition(gridSize);
+
+        return partitions.values().stream()
+                .sorted(Comparator.comparingLong(range -> range.getLong(CsvByteRangePartitioner.START_OFFSET)))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> read(File file, ExecutionContext range) throws Exception {
+        MappedCsvItemReader<String> itemReader = new MappedCsvItemReader<>(new FileSystemResource(file), 2,
+                record -> record.readInt(0) + ":" + record.readString(1));
+        itemReader.setName("rangeReader");
+        itemReader.setStartOffset(range.getLong(CsvByteRangePartitioner.START_OFFSET));
+        itemReader.setEndOffset(range.getLong(CsvByteRangePartitioner.END_OFFSET));
+
+        List<String> items = new ArrayList<>();
+        itemReader.open(new ExecutionContext());
+        try {
+            String item;
+            while ((item = itemReader.read()) != null) {
+                items.add(item);
+            }
+        } finally {
+            itemReader.close();
+        }
+        return items;
+    }
+
+    private File write(String content) throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
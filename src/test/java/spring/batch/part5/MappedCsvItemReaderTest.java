@@ -0,0 +1,121 @@
+package spring.batch.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedCsvItemReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsLinesAcrossWindowBoundary() throws Exception {
+        File file = write("id,name\n1,가나다라마바사\n2,abcdefghijklmnop\n3,c\n");
+
+        //window 보다 긴 줄, window 경계에 걸친 줄과 여러 byte 문자
+        MappedCsvItemReader<String> itemReader = reader(file);
+        itemReader.setLinesToSkip(1);
+        itemReader.setWindowSize(5);
+
+        Assertions.assertThat(readAll(itemReader, new ExecutionContext()))
+                .containsExactly("1:가나다라마바사", "2:abcdefghijklmnop", "3:c");
+    }
+
+    @Test
+    public void readsCrlfAndSkipsBlankLines() throws Exception {
+        File file = write("1,a\r\n\r\n2,b\r\n\n3,c");
+
+        Assertions.assertThat(readAll(reader(file), new ExecutionContext()))
+                .containsExactly("1:a", "2:b", "3:c");
+    }
+
+    @Test
+    public void readStringTrimsLikeFieldSet() throws Exception {
+        File file = write(" 1 ,  a b \t\n");
+
+        Assertions.assertThat(readAll(reader(file), new ExecutionContext()))
+                .containsExactly("1:a b");
+    }
+
+    @Test
+    public void restartsFromSavedOffset() throws Exception {
+        File file = write("1,a\n2,b\n3,c\n4,d\n");
+        ExecutionContext executionContext = new ExecutionContext();
+
+        MappedCsvItemReader<String> first = reader(file);
+        first.setWindowSize(3);
+        first.open(executionContext);
+        Assertions.assertThat(first.read()).isEqualTo("1:a");
+        Assertions.assertThat(first.read()).isEqualTo("2:b");
+        first.update(executionContext);
+        Assertions.assertThat(first.read()).isEqualTo("3:c");
+        first.close();
+
+        //저장한 후 읽은 3 은 commit 되지 않았으므로 다시 읽는다
+        MappedCsvItemReader<String> restarted = reader(file);
+        restarted.setWindowSize(3);
+        Assertions.assertThat(readAll(restarted, executionContext)).containsExactly("3:c", "4:d");
+    }
+
+    @Test
+    public void readsOnlyLinesStartingInRange() throws Exception {
+        //"1,a\n" 0~3, "2,b\n" 4~7, "3,c\n" 8~11
+        File file = write("1,a\n2,b\n3,c\n");
+
+        MappedCsvItemReader<String> itemReader = reader(file);
+        itemReader.setStartOffset(4);
+        itemReader.setEndOffset(8);
+        Assertions.assertThat(readAll(itemReader, new ExecutionContext())).containsExactly("2:b");
+
+        //endOffset 이 줄 중간이면 그 줄은 끝까지 읽는다
+        itemReader = reader(file);
+        itemReader.setStartOffset(4);
+        itemReader.setEndOffset(9);
+        Assertions.assertThat(readAll(itemReader, new ExecutionContext())).containsExactly("2:b", "3:c");
+    }
+
+    @Test(expected = IncorrectTokenCountException.class)
+    public void failsOnIncorrectTokenCount() throws Exception {
+        File file = write("1,a,extra\n");
+
+        readAll(reader(file), new ExecutionContext());
+    }
+
+    private File write(String content) throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static MappedCsvItemReader<String> reader(File file) {
+        MappedCsvItemReader<String> itemReader = new MappedCsvItemReader<>(new FileSystemResource(file), 2,
+                record -> record.readInt(0) + ":" + record.readString(1));
+        itemReader.setName("reader");
+        return itemReader;
+    }
+
+    private static List<String> readAll(MappedCsvItemReader<String> itemReader, ExecutionContext executionContext) throws Exception {
+        List<String> items = new ArrayList<>();
+        itemReader.open(executionContext);
+        try {
+            String item;
+            while ((item = itemReader.read()) != null) {
+                items.add(item);
+            }
+        } finally {
+            itemReader.close();
+        }
+        return items;
+    }
+}
@@ -0,0 +1,77 @@
+package spring.batch.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PartFileMergeTaskletTest {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path partDirectory;
+    private Path target;
+
+    @Before
+    public void setUp() throws Exception {
+        partDirectory = temporaryFolder.getRoot().toPath().resolve("parts");
+        target = temporaryFolder.getRoot().toPath().resolve("output").resolve("merged.csv");
+        Files.createDirectories(partDirectory);
+    }
+
+    @Test
+    public void mergesPartsInFileNameOrderAndDeletesThem() throws Exception {
+        write("2020-02" + PartFileMergeTasklet.PART_SUFFIX, "b1\nb2\n");
+        write("2020-01" + PartFileMergeTasklet.PART_SUFFIX, "a1\n");
+        write("2020-03" + PartFileMergeTasklet.PART_SUFFIX, "");
+
+        Assertions.assertThat(execute("header", "footer")).isEqualTo(RepeatStatus.FINISHED);
+
+        Assertions.assertThat(read(target)).isEqualTo("header" + LINE_SEPARATOR + "a1\nb1\nb2\n" + "footer" + LINE_SEPARATOR);
+        Assertions.assertThat(partDirectory).doesNotExist();
+    }
+
+    //part 파일을 지운 후 step 결과를 저장하지 못해서 재시작한 경우
+    @Test
+    public void skipsWhenPartsAreGoneAndTargetExists() throws Exception {
+        write("2020-01" + PartFileMergeTasklet.PART_SUFFIX, "a1\n");
+        execute("header", null);
+        Files.createDirectories(partDirectory);
+
+        execute("header", null);
+
+        Assertions.assertThat(read(target)).isEqualTo("header" + LINE_SEPARATOR + "a1\n");
+        Assertions.assertThat(partDirectory).doesNotExist();
+    }
+
+    @Test
+    public void writesHeaderOnlyWhenThereAreNoParts() throws Exception {
+        execute("header", null);
+
+        Assertions.assertThat(read(target)).isEqualTo("header" + LINE_SEPARATOR);
+    }
+
+    private RepeatStatus execute(String header, String footer) throws Exception {
+        PartFileMergeTasklet tasklet = new PartFileMergeTasklet(partDirectory, target, header, footer, StandardCharsets.UTF_8);
+        return tasklet.execute(new StepContribution(MetaDataInstanceFactory.createStepExecution()), null);
+    }
+
+    private void write(String fileName, String content) throws Exception {
+        Files.write(partDirectory.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
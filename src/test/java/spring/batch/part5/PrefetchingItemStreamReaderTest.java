@@ -0,0 +1,117 @@
+package spring.batch.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PrefetchingItemStreamReaderTest {
+
+    @Test
+    public void readsAllItemsInOrder() throws Exception {
+        PrefetchingItemStreamReader<Integer> itemReader = new PrefetchingItemStreamReader<>(new IntegerItemReader(100, -1), 3);
+
+        Assertions.assertThat(readAll(itemReader, new ExecutionContext())).hasSize(100).isSorted();
+    }
+
+    @Test
+    public void savesItemsTakenByStepInsteadOfPrefetchedPosition() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        IntegerItemReader delegate = new IntegerItemReader(20, -1);
+        PrefetchingItemStreamReader<Integer> itemReader = new PrefetchingItemStreamReader<>(delegate, 5);
+
+        itemReader.open(executionContext);
+        for (int i = 1; i <= 3; i++) {
+            Assertions.assertThat(itemReader.read()).isEqualTo(i);
+        }
+        //prefetch thread 가 buffer 를 채울 때까지 기다린 후 저장
+        for (int i = 0; i < 100 && delegate.readItems() < 8; i++) {
+            Thread.sleep(10);
+        }
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        Assertions.assertThat(executionContext.getInt("integers.read.count")).isEqualTo(3);
+
+        //재시작하면 step 이 가져간 3개 다음부터 읽는다
+        List<Integer> restarted = readAll(new PrefetchingItemStreamReader<>(new IntegerItemReader(20, -1), 5), executionContext);
+        Assertions.assertThat(restarted).hasSize(17).startsWith(4).endsWith(20);
+    }
+
+    @Test
+    public void rethrowsDelegateFailureAfterBufferedItems() throws Exception {
+        PrefetchingItemStreamReader<Integer> itemReader = new PrefetchingItemStreamReader<>(new IntegerItemReader(10, 3), 5);
+        itemReader.open(new ExecutionContext());
+
+        Assertions.assertThat(itemReader.read()).isEqualTo(1);
+        Assertions.assertThat(itemReader.read()).isEqualTo(2);
+        Assertions.assertThatThrownBy(itemReader::read).isInstanceOf(IllegalStateException.class);
+        itemReader.close();
+    }
+
+    @Test
+    public void closeStopsPrefetchWhileBufferIsFull() throws Exception {
+        IntegerItemReader delegate = new IntegerItemReader(1000, -1);
+        PrefetchingItemStreamReader<Integer> itemReader = new PrefetchingItemStreamReader<>(delegate, 2);
+        itemReader.open(new ExecutionContext());
+        Assertions.assertThat(itemReader.read()).isEqualTo(1);
+
+        itemReader.close();
+
+        Assertions.assertThat(delegate.readItems()).isLessThan(1000);
+    }
+
+    private static List<Integer> readAll(PrefetchingItemStreamReader<Integer> itemReader, ExecutionContext executionContext) throws Exception {
+        List<Integer> items = new ArrayList<>();
+        itemReader.open(executionContext);
+        try {
+            Integer item;
+            while ((item = itemReader.read()) != null) {
+                items.add(item);
+            }
+        } finally {
+            itemReader.close();
+        }
+        return items;
+    }
+
+    //1 부터 count 까지 읽고, failAt 번째에서 실패한다. read.count 로 재시작한다
+    private static class IntegerItemReader extends AbstractItemCountingItemStreamItemReader<Integer> {
+
+        private final int count;
+        private final int failAt;
+        //prefetch thread 가 바꾸므로 volatile
+        private volatile int next;
+
+        private IntegerItemReader(int count, int failAt) {
+            this.count = count;
+            this.failAt = failAt;
+            setName("integers");
+        }
+
+        @Override
+        protected Integer doRead() {
+            next++;
+            if (next == failAt) {
+                throw new IllegalStateException("fail at " + next);
+            }
+            return next <= count ? next : null;
+        }
+
+        @Override
+        protected void doOpen() {
+            next = 0;
+        }
+
+        @Override
+        protected void doClose() {
+        }
+
+        private int readItems() {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package spring.batch.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionLimitingDataSourceTest {
+
+    @Test
+    public void limitsThreadsUsingConnections() throws Exception {
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(targetDataSource(), 2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        //permit 보다 많은 thread 가 동시에 connection 을 요청해도 2개씩만 사용하고 나머지는 기다린다
+        ExecutorService executorService = Executors.newFixedThreadPool(10);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executorService.submit(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    active.decrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        Assertions.assertThat(maxActive.get()).isEqualTo(2);
+        Assertions.assertThat(dataSource.getAvailablePermits()).isEqualTo(2);
+    }
+
+    //chunk transaction 중에 reader 가 connection 을 하나 더 열어도 permit 을 하나만 쓴다
+    @Test
+    public void sameThreadUsesOnePermit() throws Exception {
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(targetDataSource(), 1);
+
+        try (Connection outer = dataSource.getConnection(); Connection inner = dataSource.getConnection()) {
+            Assertions.assertThat(dataSource.getAvailablePermits()).isZero();
+        }
+
+        Assertions.assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    public void closeReleasesPermitOnce() throws Exception {
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(targetDataSource(), 1);
+
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+
+        Assertions.assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+        Mockito.verify(((ConnectionProxy) connection).getTargetConnection(), Mockito.times(1)).close();
+    }
+
+    private static DataSource targetDataSource() throws Exception {
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> Mockito.mock(Connection.class));
+        return dataSource;
+    }
+}
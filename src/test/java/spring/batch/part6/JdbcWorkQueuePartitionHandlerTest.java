@@ -0,0 +1,88 @@
+package spring.batch.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.batch.TestConfiguration;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {PartitionUserConfiguration.class, JdbcPartitionWorkQueue.class, PartitionWorkQueueSchemaInitializer.class, ConcurrencySizing.class, TestConfiguration.class})
+@TestPropertySource(properties = {"batch.dataset-size=400", "batch.chunk-size=100", "batch.partition-queue.poll-interval=100"})
+public class JdbcWorkQueuePartitionHandlerTest {
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JdbcPartitionWorkQueue workQueue;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    private ConcurrencySizing concurrencySizing;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //manager 는 queue 에 partition 을 넣고 기다리고, 다른 JVM 대신 별도 thread 의 worker 가 queue 에서 가져가서 실행한다
+    @Test
+    public void workerExecutesQueuedPartitions() throws Exception {
+        JdbcPartitionWorker worker = new JdbcPartitionWorker(workQueue, jobExplorer, applicationContext, taskExecutor, concurrencySizing, "2", "NONE");
+        Thread workerThread = new Thread(() -> {
+            try {
+                worker.run(null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        workerThread.start();
+
+        JobExecution jobExecution;
+        try {
+            jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                    .addString("partitionHandler", "jdbc-queue")
+                    .addString("concurrency", "2")
+                    .addString("date", "2020-11")
+                    .toJobParameters());
+        } finally {
+            worker.stop();
+            workerThread.join(10_000);
+        }
+
+        //partition 은 worker 가 실행하고 저장하므로 repository 에서 다시 읽는다
+        List<StepExecution> partitions = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().startsWith("partitionUserJob_userLevelUpStep:"))
+                .collect(Collectors.toList());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(partitions).isNotEmpty()
+                .allMatch(stepExecution -> stepExecution.getStatus() == BatchStatus.COMPLETED);
+        Assertions.assertThat(partitions.stream().mapToInt(StepExecution::getReadCount).sum()).isEqualTo(400);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from partition_work_queue", Integer.class)).isZero();
+    }
+}
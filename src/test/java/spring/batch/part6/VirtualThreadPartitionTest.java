@@ -0,0 +1,75 @@
+package spring.batch.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.batch.TestConfiguration;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assume.assumeTrue;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {PartitionUserConfiguration.class, JdbcPartitionWorkQueue.class, PartitionWorkQueueSchemaInitializer.class, ConcurrencySizing.class, ConnectionLimitingDataSourcePostProcessor.class, TestConfiguration.class})
+@TestPropertySource(properties = {"batch.task-executor=virtual", "batch.dataset-size=2000", "batch.chunk-size=50",
+        "spring.datasource.hikari.maximum-pool-size=4", "spring.datasource.hikari.connection-timeout=1000"})
+public class VirtualThreadPartitionTest {
+
+    private static final int POOL_SIZE = 4;
+    private static final int PARTITIONS = 40;
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeClass
+    public static void virtualThreadsSupported() {
+        assumeTrue("virtual thread 를 지원하지 않는 runtime", VirtualThreadTaskExecutor.createIfSupported() != null);
+    }
+
+    //connection 보다 많은 partition 을 virtual thread 로 동시에 실행해도 connectionTimeout 으로 실패하지 않고 semaphore 에서 차례를 기다린다
+    @Test
+    public void runsMorePartitionsThanConnections() throws Exception {
+        Assertions.assertThat(taskExecutor).isInstanceOf(VirtualThreadTaskExecutor.class);
+        Assertions.assertThat(dataSource).isInstanceOf(ConnectionLimitingDataSource.class);
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("concurrency", String.valueOf(PARTITIONS))
+                .addString("date", "2020-11")
+                .toJobParameters());
+
+        List<StepExecution> partitions = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().startsWith("partitionUserJob_userLevelUpStep:"))
+                .collect(Collectors.toList());
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(partitions).hasSizeGreaterThan(POOL_SIZE)
+                .allMatch(stepExecution -> stepExecution.getStatus() == BatchStatus.COMPLETED);
+        Assertions.assertThat(partitions.stream().mapToInt(StepExecution::getReadCount).sum()).isEqualTo(2000);
+        Assertions.assertThat(((ConnectionLimitingDataSource) dataSource).getAvailablePermits()).isEqualTo(POOL_SIZE - 1);
+    }
+}